@@ -0,0 +1,19 @@
+#!/bin/sh
+# Runs the load test once against the servlet BankController and once against
+# the WebFlux and R2DBC ReactiveBankApplication, with the same clients and
+# operation mix, and prints both reports. Extra arguments are passed on to
+# LoadTest, e.g.
+#   scripts/compare-stacks.sh --duration=120 --skew=zipf
+set -e
+cd "$(dirname "$0")/.."
+
+CLIENTS=${CLIENTS:-1000}
+
+mvn -B -q -Ploadtest,reactive test-compile
+
+for stack in servlet reactive; do
+    echo "== stack=$stack, $CLIENTS clients"
+    mvn -B -q -Ploadtest,reactive exec:exec \
+        -Dloadtest.jvm.args="-Xmx4g" \
+        -Dloadtest.args="--threads=$CLIENTS --stack=$stack $*"
+done
@@ -0,0 +1,88 @@
+#!/bin/sh
+# Measures the time from launching the JVM to the first successful
+# /api/getCustomerBalances response, as an autoscaled instance would see it, in
+# four configurations:
+#   dev       the default profile: Hibernate create-drop, then schema.sql and
+#             the data.sql sample rows on an in-memory database
+#   prod      the prod profile: schema.sql and Hibernate schema validation on a
+#             file database seeded once up front
+#   prod-aot  prod with the bean definitions Spring AOT generated at build time
+#   prod-cds  prod-aot with a class data sharing archive from a training run
+# Every configuration is started RUNS times and the fastest and median times
+# are printed. Needs Java 21 and curl, e.g.
+#   RUNS=10 scripts/compare-startup.sh
+set -e
+cd "$(dirname "$0")/.."
+
+RUNS=${RUNS:-5}
+PORT=${PORT:-18080}
+DIR=target/startup
+URL=http://localhost:$PORT/api/getCustomerBalances/1
+
+mvn -B -q -Paot package -DskipTests
+
+# CDS only archives classes loaded from plain jars, so the application runs
+# from the unpacked libraries and its own thin jar instead of the nested jar.
+rm -rf $DIR
+mkdir -p $DIR/app
+(cd $DIR/app && jar xf ../../demo-0.0.1-SNAPSHOT.jar BOOT-INF/lib)
+cp target/demo-0.0.1-SNAPSHOT.jar.original $DIR/app/demo.jar
+CLASSPATH=$DIR/app/demo.jar:$(ls $DIR/app/BOOT-INF/lib/*.jar | tr '\n' ':')
+
+# A production database already holds its schema and data.
+DATABASE=jdbc:h2:file:./$DIR/bank
+for script in schema data; do
+    java -cp "$CLASSPATH" org.h2.tools.RunScript -url "$DATABASE" -user sa \
+        -script src/main/resources/$script.sql
+done
+
+# Starts the application with the given JVM and application arguments, waits
+# for the first successful response and stops it again. Prints the milliseconds
+# it took.
+measure() {
+    jvm_args=$1
+    shift
+    start=$(date +%s%N)
+    java $jvm_args -cp "$CLASSPATH" com.demo.DemoApplication --server.port=$PORT \
+        --logging.level.root=WARN "$@" > $DIR/app.log 2>&1 &
+    pid=$!
+    until curl -sf -o /dev/null $URL; do
+        if ! kill -0 $pid 2> /dev/null; then
+            cat $DIR/app.log >&2
+            exit 1
+        fi
+        sleep 0.01
+    done
+    end=$(date +%s%N)
+    kill $pid
+    wait $pid || true
+    echo $(((end - start) / 1000000))
+}
+
+# Hibernate would otherwise drop the sample rows data.sql just inserted.
+DEV="--spring.jpa.defer-datasource-initialization=true"
+PROD="--spring.profiles.active=prod --spring.datasource.url=$DATABASE"
+
+# The training run serves one request, so the archive also holds the classes
+# of the request path, and is written when the JVM exits.
+measure "-Dspring.aot.enabled=true -XX:ArchiveClassesAtExit=$DIR/app.jsa" $PROD > /dev/null
+
+run() {
+    name=$1
+    shift
+    times=""
+    i=0
+    while [ $i -lt $RUNS ]; do
+        times="$times $(measure "$@")"
+        i=$((i + 1))
+    done
+    sorted=$(echo $times | tr ' ' '\n' | sort -n)
+    fastest=$(echo "$sorted" | head -1)
+    median=$(echo "$sorted" | sed -n "$(((RUNS + 1) / 2))p")
+    echo "$name: fastest $fastest ms, median $median ms over $RUNS runs"
+}
+
+run dev "" $DEV
+run prod "" $PROD
+run prod-aot "-Dspring.aot.enabled=true" $PROD
+run prod-cds "-Dspring.aot.enabled=true -XX:SharedArchiveFile=$DIR/app.jsa" $PROD
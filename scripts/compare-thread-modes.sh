@@ -0,0 +1,20 @@
+#!/bin/sh
+# Runs the load test once on Tomcat's platform-thread pool and once with
+# virtual threads, with the same number of concurrent clients, and prints both
+# reports. Needs Java 21. Extra arguments are passed on to LoadTest, e.g.
+#   scripts/compare-thread-modes.sh --duration=120 --skew=zipf
+set -e
+cd "$(dirname "$0")/.."
+
+CLIENTS=${CLIENTS:-5000}
+
+mvn -B -q -Ploadtest test-compile
+
+for mode in false true; do
+    echo "== virtual-threads=$mode, $CLIENTS clients"
+    # jdk.tracePinnedThreads prints a stack whenever a virtual thread blocks
+    # while pinned to its carrier.
+    mvn -B -q -Ploadtest exec:exec \
+        -Dloadtest.jvm.args="-Xmx4g -Djdk.tracePinnedThreads=short" \
+        -Dloadtest.args="--threads=$CLIENTS --virtual-threads=$mode $*"
+done
@@ -0,0 +1,24 @@
+-- Moves an existing transactions table from stored detail strings to the two
+-- customer ids they are now rendered from, see TransactionDetails. A transfer's
+-- customers always own its accounts, so the ids are taken from accounts.
+-- Safe to run again after a partial run. Run it while no transfers are written,
+-- e.g.
+--   java -cp h2.jar org.h2.tools.RunScript -url jdbc:h2:file:./bank -script scripts/migrate-transaction-details.sql
+-- On a large table run the UPDATE in id ranges, adding "AND id BETWEEN x AND y",
+-- so each transaction stays short.
+
+ALTER TABLE transactions ADD COLUMN IF NOT EXISTS sender_customer_id BIGINT;
+ALTER TABLE transactions ADD COLUMN IF NOT EXISTS receiver_customer_id BIGINT;
+-- an earlier version of this script added them as INTEGER
+ALTER TABLE transactions ALTER COLUMN sender_customer_id SET DATA TYPE BIGINT;
+ALTER TABLE transactions ALTER COLUMN receiver_customer_id SET DATA TYPE BIGINT;
+
+UPDATE transactions t SET
+    sender_customer_id = (SELECT a.customer_id FROM accounts a WHERE a.id = t.sender_account_id),
+    receiver_customer_id = (SELECT a.customer_id FROM accounts a WHERE a.id = t.receiver_account_id)
+WHERE t.sender_customer_id IS NULL OR t.receiver_customer_id IS NULL;
+
+ALTER TABLE transactions ALTER COLUMN sender_customer_id SET NOT NULL;
+ALTER TABLE transactions ALTER COLUMN receiver_customer_id SET NOT NULL;
+
+ALTER TABLE transactions DROP COLUMN IF EXISTS transaction_details;
@@ -0,0 +1,92 @@
+package com.demo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.demo.Bank.AccountOwnerIndex;
+
+/**
+ * Ownership lookups in the AccountOwnerIndex against a HashMap<Long, Long>
+ * holding the same accounts, two per customer. The gc profiler of the jmh
+ * profile shows the allocations per lookup. The heap each structure retains is
+ * measured once per trial, as the used heap after a full collection with and
+ * without it, and printed with the trial's output, e.g.
+ * -Djmh.args="AccountOwnerIndexBenchmarks -p accounts=10000000 -jvmArgsAppend -Xmx4g"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms3g", "-Xmx3g" })
+@State(Scope.Benchmark)
+public class AccountOwnerIndexBenchmarks {
+
+    @Param({ "1000000" })
+    public int accounts;
+
+    AccountOwnerIndex index;
+
+    Map<Long, Long> baseline;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        long before = usedHeap();
+        // no repository, every looked up id is present
+        index = new AccountOwnerIndex(null, null);
+        for (long account = 1; account <= accounts; account++) {
+            index.put(account, ownerOf(account));
+        }
+        long indexBytes = usedHeap() - before;
+
+        before = usedHeap();
+        baseline = new HashMap<>();
+        for (long account = 1; account <= accounts; account++) {
+            baseline.put(account, ownerOf(account));
+        }
+        long baselineBytes = usedHeap() - before;
+
+        System.out.printf("%nFootprint for %d accounts: AccountOwnerIndex %d MiB (%.1f bytes per account), "
+                + "HashMap<Long, Long> %d MiB (%.1f bytes per account)%n", accounts, indexBytes >> 20,
+                (double) indexBytes / accounts, baselineBytes >> 20, (double) baselineBytes / accounts);
+    }
+
+    @Benchmark
+    public boolean index() {
+        long account = ThreadLocalRandom.current().nextLong(1, accounts + 1);
+        return index.ownerOf(account) == ownerOf(account);
+    }
+
+    @Benchmark
+    public boolean hashMap() {
+        long account = ThreadLocalRandom.current().nextLong(1, accounts + 1);
+        return baseline.get(account) == ownerOf(account);
+    }
+
+    static long ownerOf(long account) {
+        return (account - 1) / 2 + 1;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
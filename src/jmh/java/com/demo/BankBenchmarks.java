@@ -0,0 +1,157 @@
+package com.demo;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.demo.Bank.CreateAccountRequest;
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRequest;
+
+/**
+ * Throughput of the controller hot paths against the real repositories on an
+ * in-memory H2 database. The database is seeded once per trial with the given
+ * number of customers (two accounts each) and transactions. Run through the jmh
+ * Maven profile, which also attaches the gc profiler for allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class BankBenchmarks {
+
+    static final int ACCOUNTS_PER_CUSTOMER = 2;
+    static final int SEED_BATCH_SIZE = 10000;
+    static final BigDecimal SEED_BALANCE = new BigDecimal("100000.00");
+    static final Money TRANSFER_AMOUNT = Money.of("0.01");
+
+    @Param({ "1000" })
+    public int customers;
+
+    @Param({ "1000", "100000" })
+    public int transactions;
+
+    ConfigurableApplicationContext context;
+
+    BankController bankController;
+
+    @Setup(Level.Trial)
+    public void startAndSeed() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        bankController = context.getBean(BankController.class);
+
+        seed(context.getBean(JdbcTemplate.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    private void seed(JdbcTemplate jdbc) {
+        List<Object[]> rows = new ArrayList<>(SEED_BATCH_SIZE);
+        for (long customer = 1; customer <= customers; customer++) {
+            rows.add(new Object[] { customer, "Customer " + customer });
+            rows = flush(jdbc, "INSERT INTO customers(id, name) VALUES (?, ?)", rows, false);
+        }
+        flush(jdbc, "INSERT INTO customers(id, name) VALUES (?, ?)", rows, true);
+
+        rows = new ArrayList<>(SEED_BATCH_SIZE);
+        int accounts = customers * ACCOUNTS_PER_CUSTOMER;
+        for (long account = 1; account <= accounts; account++) {
+            rows.add(new Object[] { account, ownerOf(account), SEED_BALANCE });
+            rows = flush(jdbc, "INSERT INTO accounts(id, customer_id, balance) VALUES (?, ?, ?)", rows, false);
+        }
+        flush(jdbc, "INSERT INTO accounts(id, customer_id, balance) VALUES (?, ?, ?)", rows, true);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String insertTransaction = "INSERT INTO transactions(id, sender_account_id, sender_customer_id, "
+                + "receiver_account_id, receiver_customer_id, amount) VALUES (?, ?, ?, ?, ?, ?)";
+        rows = new ArrayList<>(SEED_BATCH_SIZE);
+        for (long transaction = 1; transaction <= transactions; transaction++) {
+            long sender = random.nextLong(1, accounts + 1);
+            long receiver = random.nextLong(1, accounts + 1);
+            rows.add(new Object[] { transaction, sender, ownerOf(sender), receiver, ownerOf(receiver),
+                    TRANSFER_AMOUNT.toBigDecimal() });
+            rows = flush(jdbc, insertTransaction, rows, false);
+        }
+        flush(jdbc, insertTransaction, rows, true);
+
+        jdbc.execute("ALTER SEQUENCE accounts_seq RESTART WITH " + (accounts + 1));
+        jdbc.execute("ALTER SEQUENCE transactions_seq RESTART WITH " + (transactions + 1));
+    }
+
+    private static List<Object[]> flush(JdbcTemplate jdbc, String sql, List<Object[]> rows, boolean force) {
+        if (rows.isEmpty() || (!force && rows.size() < SEED_BATCH_SIZE)) {
+            return rows;
+        }
+        jdbc.batchUpdate(sql, rows);
+        return new ArrayList<>(SEED_BATCH_SIZE);
+    }
+
+    static long ownerOf(long account) {
+        return (account - 1) / ACCOUNTS_PER_CUSTOMER + 1;
+    }
+
+    private long randomAccount() {
+        return ThreadLocalRandom.current().nextLong(1, (long) customers * ACCOUNTS_PER_CUSTOMER + 1);
+    }
+
+    private long randomCustomer() {
+        return ThreadLocalRandom.current().nextLong(1, customers + 1);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<String>> transfer() {
+        long sender = randomAccount();
+        long receiver = randomAccount();
+        return bankController.transferBetweenAccountsAndRecordTransaction(
+                new TransactionRequest(sender, ownerOf(sender), receiver, ownerOf(receiver), TRANSFER_AMOUNT), null);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<String>> balanceLookup() {
+        return bankController.getCustomerBalancesById(randomCustomer(), null);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<String>> historyFetch() {
+        return bankController.returnTransferHistoryPage(randomCustomer(), 0, 50);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<String>> accountCreation() {
+        return bankController.createNewBankAccountForCustomer(
+                new CreateAccountRequest(randomCustomer(), TRANSFER_AMOUNT), null);
+    }
+
+}
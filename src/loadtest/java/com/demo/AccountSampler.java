@@ -0,0 +1,51 @@
+package com.demo;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks account ids in 1..accounts, either uniformly or following a Zipf
+ * distribution where account 1 is the hottest. The Zipf sampler precomputes
+ * the cumulative distribution once and binary searches it per draw.
+ */
+abstract class AccountSampler {
+
+    final long accounts;
+
+    AccountSampler(long accounts) {
+        this.accounts = accounts;
+    }
+
+    abstract long next();
+
+    static AccountSampler uniform(long accounts) {
+        return new AccountSampler(accounts) {
+            @Override
+            long next() {
+                return ThreadLocalRandom.current().nextLong(1, accounts + 1);
+            }
+        };
+    }
+
+    static AccountSampler zipf(int accounts, double exponent) {
+        double[] cumulative = new double[accounts];
+        double sum = 0;
+        for (int rank = 1; rank <= accounts; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < accounts; i++) {
+            cumulative[i] /= sum;
+        }
+
+        return new AccountSampler(accounts) {
+            @Override
+            long next() {
+                int i = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+                int index = i >= 0 ? i : -i - 1;
+                return Math.min(index, accounts - 1) + 1;
+            }
+        };
+    }
+
+}
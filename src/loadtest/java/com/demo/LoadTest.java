@@ -0,0 +1,389 @@
+package com.demo;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.demo.Bank.HotAccounts;
+import com.demo.Idempotency.IdempotencyStore;
+import com.demo.Transaction.JournalProjector;
+
+/**
+ * Closed-loop load generator for the REST endpoints in BankController. It
+ * starts the application on a random port against its own in-memory H2
+ * database, seeds customers with two funded accounts each, and has a fixed
+ * number of clients issue a weighted mix of transfers, balance lookups,
+ * history fetches and account creations for the given duration. Accounts are
+ * picked uniformly or with a Zipfian skew towards a few hot accounts.
+ *
+ * Latencies are reported per operation as p50/p99/p999, 400 responses are
+ * counted as rejected and anything else but 200 as failed, and the full
+ * HdrHistogram percentile distributions are written to target/loadtest. Once
+ * the load has stopped it checks that money was conserved: the sum of all
+ * balances is unchanged, and for every account the seeded balance plus
+ * received minus sent transaction amounts equals its current balance. The
+ * process exits with status 1 if either check fails.
+ *
+ * With --stack=reactive the same load is sent to ReactiveBankApplication
+ * instead, which needs the reactive Maven profile as well. It runs against an
+ * H2 database of the same name, reached over JDBC for seeding and checks.
+ *
+ * Options are passed as --name=value, see {@link #main(String[])} for the
+ * defaults.
+ */
+public class LoadTest {
+
+    enum Operation {
+        TRANSFER, BALANCE, HISTORY, CREATE
+    }
+
+    static final int ACCOUNTS_PER_CUSTOMER = 2;
+    static final int SEED_BATCH_SIZE = 10000;
+    static final long MAX_TRANSFER_CENTS = 1000;
+    static final Path REPORT_DIR = Path.of("target", "loadtest");
+    static final String DATABASE = "loadtest;DB_CLOSE_DELAY=-1";
+    static final String REACTIVE_APPLICATION = "com.demo.Reactive.ReactiveBankApplication";
+
+    final String stack;
+    final int customers;
+    final int threads;
+    final boolean virtualThreads;
+    final boolean journal;
+    final int hotAccounts;
+    final int partitions;
+    final boolean idempotencyKeys;
+    final Duration duration;
+    final BigDecimal seedBalance;
+    final Map<Operation, Integer> mix;
+    final AccountSampler sampler;
+
+    final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    final Map<Operation, LongAdder> rejected = new EnumMap<>(Operation.class);
+    final Map<Operation, LongAdder> failed = new EnumMap<>(Operation.class);
+
+    HttpClient client;
+    URI baseUri;
+
+    LoadTest(Map<String, String> options) {
+        stack = options.getOrDefault("stack", "servlet");
+        if (!stack.equals("servlet") && !stack.equals("reactive")) {
+            throw new IllegalArgumentException("stack must be servlet or reactive: " + stack);
+        }
+        customers = Integer.parseInt(options.getOrDefault("customers", "1000"));
+        threads = Integer.parseInt(options.getOrDefault("threads", "32"));
+        virtualThreads = Boolean.parseBoolean(options.getOrDefault("virtual-threads", "false"));
+        journal = Boolean.parseBoolean(options.getOrDefault("journal", "false"));
+        hotAccounts = Integer.parseInt(options.getOrDefault("hot-accounts", "0"));
+        partitions = Integer.parseInt(options.getOrDefault("partitions", "0"));
+        idempotencyKeys = Boolean.parseBoolean(options.getOrDefault("idempotency-keys", "false"));
+        duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        seedBalance = new BigDecimal(options.getOrDefault("seed-balance", "1000.00"));
+        mix = parseMix(options.getOrDefault("mix", "transfer:70,balance:20,history:8,create:2"));
+
+        int accounts = customers * ACCOUNTS_PER_CUSTOMER;
+        String skew = options.getOrDefault("skew", "uniform");
+        switch (skew) {
+            case "uniform":
+                sampler = AccountSampler.uniform(accounts);
+                break;
+            case "zipf":
+                sampler = AccountSampler.zipf(accounts,
+                        Double.parseDouble(options.getOrDefault("zipf-exponent", "1.0")));
+                break;
+            default:
+                throw new IllegalArgumentException("skew must be uniform or zipf: " + skew);
+        }
+
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3));
+            rejected.put(operation, new LongAdder());
+            failed.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * --customers=1000 --threads=32 --duration=30 (seconds)
+     * --mix=transfer:70,balance:20,history:8,create:2 --skew=uniform|zipf
+     * --zipf-exponent=1.0 --seed-balance=1000.00
+     * --virtual-threads=false (serve requests on virtual threads)
+     * --journal=false (record transfers in the TransferJournal)
+     * --hot-accounts=0 (give accounts 1..n credit shards, the hottest under zipf)
+     * --partitions=0 (apply transfers on n PartitionedTransferExecutor partitions)
+     * --idempotency-keys=false (send a new Idempotency-Key with every transfer and create)
+     * --stack=servlet|reactive (BankController or ReactiveBankApplication)
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        LoadTest loadTest = new LoadTest(options);
+        boolean conserved;
+        try (ConfigurableApplicationContext context = loadTest.start()) {
+            JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + DATABASE, "sa", ""));
+            loadTest.seed(jdbc);
+            for (long account = 1; account <= loadTest.hotAccounts; account++) {
+                context.getBean(HotAccounts.class).enable(account);
+            }
+            loadTest.run(context.getEnvironment().getProperty("local.server.port", Integer.class));
+            loadTest.report(System.out);
+            if (loadTest.stack.equals("servlet")) {
+                context.getBean(JournalProjector.class).awaitProjected();
+            }
+            conserved = loadTest.checkConservation(jdbc, System.out);
+        }
+        System.exit(conserved ? 0 : 1);
+    }
+
+    ConfigurableApplicationContext start() throws ClassNotFoundException {
+        if (stack.equals("reactive")) {
+            if (virtualThreads || journal || hotAccounts > 0 || partitions > 0 || idempotencyKeys) {
+                throw new IllegalArgumentException("--virtual-threads, --journal, --hot-accounts, --partitions and "
+                        + "--idempotency-keys only apply to the servlet stack");
+            }
+            // schema.sql creates the schema here, seed() clears the sample rows of data.sql.
+            return new SpringApplicationBuilder(Class.forName(REACTIVE_APPLICATION))
+                    .profiles("reactive")
+                    .run("--server.port=0",
+                            "--spring.r2dbc.url=r2dbc:h2:mem:///" + DATABASE,
+                            "--logging.level.root=WARN");
+        }
+        return new SpringApplicationBuilder(DemoApplication.class)
+                .profiles(virtualThreads ? new String[] { "virtual-threads" } : new String[0])
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:" + DATABASE,
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--bank.journal.enabled=" + journal,
+                        "--bank.partitions.enabled=" + (partitions > 0),
+                        "--bank.partitions.count=" + partitions,
+                        "--bank.journal.dir=" + REPORT_DIR.resolve("journal-" + System.currentTimeMillis()));
+    }
+
+    static Map<Operation, Integer> parseMix(String spec) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String[] weight = part.split(":");
+            mix.put(Operation.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+
+    void seed(JdbcTemplate jdbc) {
+        jdbc.execute("DELETE FROM transactions");
+        jdbc.execute("DELETE FROM pending_credits");
+        jdbc.execute("DELETE FROM idempotency_keys");
+        jdbc.execute("DELETE FROM account_shards");
+        jdbc.execute("DELETE FROM accounts");
+        jdbc.execute("DELETE FROM customers");
+
+        List<Object[]> rows = new ArrayList<>();
+        for (long customer = 1; customer <= customers; customer++) {
+            rows.add(new Object[] { customer, "Customer " + customer });
+        }
+        jdbc.batchUpdate("INSERT INTO customers(id, name) VALUES (?, ?)", rows);
+
+        rows = new ArrayList<>();
+        for (long account = 1; account <= sampler.accounts; account++) {
+            rows.add(new Object[] { account, ownerOf(account), seedBalance });
+            if (rows.size() == SEED_BATCH_SIZE) {
+                jdbc.batchUpdate("INSERT INTO accounts(id, customer_id, balance) VALUES (?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO accounts(id, customer_id, balance) VALUES (?, ?, ?)", rows);
+        jdbc.execute("ALTER SEQUENCE accounts_seq RESTART WITH " + (sampler.accounts + 1));
+    }
+
+    static long ownerOf(long account) {
+        return (account - 1) / ACCOUNTS_PER_CUSTOMER + 1;
+    }
+
+    void run(int port) throws InterruptedException {
+        baseUri = URI.create("http://localhost:" + port + "/api/");
+        // One virtual thread per client, so thousands of clients are cheap on this side.
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        for (int i = 0; i < threads; i++) {
+            workers.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    execute(nextOperation());
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS);
+    }
+
+    Operation nextOperation() {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+            pick -= weight.getValue();
+            if (pick < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    void execute(Operation operation) {
+        HttpRequest request = request(operation);
+        long start = System.nanoTime();
+        try {
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            latencies.get(operation).recordValue(System.nanoTime() - start);
+            if (status == 400) {
+                // Business rule answers such as insufficient funds once hot accounts
+                // drain, or a customer without any transactions yet.
+                rejected.get(operation).increment();
+            } else if (status != 200) {
+                failed.get(operation).increment();
+            }
+        } catch (IOException | InterruptedException e) {
+            failed.get(operation).increment();
+        }
+    }
+
+    HttpRequest request(Operation operation) {
+        switch (operation) {
+            case TRANSFER: {
+                long sender = sampler.next();
+                long receiver = sampler.next();
+                while (receiver == sender) {
+                    receiver = sampler.next();
+                }
+                BigDecimal amount = BigDecimal.valueOf(ThreadLocalRandom.current().nextLong(1, MAX_TRANSFER_CENTS + 1),
+                        2);
+                return json("transfer", "PUT", String.format(
+                        "{\"sender_account_id\":%d,\"sending_customer_id\":%d,\"receiver_account_id\":%d,"
+                                + "\"receiving_customer_id\":%d,\"amount\":%s}",
+                        sender, ownerOf(sender), receiver, ownerOf(receiver), amount.toPlainString()));
+            }
+            case BALANCE:
+                return HttpRequest.newBuilder(baseUri.resolve("getCustomerBalances/" + ownerOf(sampler.next())))
+                        .GET().build();
+            case HISTORY:
+                return HttpRequest
+                        .newBuilder(baseUri.resolve("getCustomerTransactionHistory/" + ownerOf(sampler.next())
+                                + "?limit=50"))
+                        .GET().build();
+            case CREATE:
+                // New accounts start empty so the total balance stays fixed.
+                return json("createBankAccount", "POST",
+                        "{\"customer_id\":" + ownerOf(sampler.next()) + ",\"initialDeposit\":0}");
+            default:
+                throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    HttpRequest json(String path, String method, String body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body));
+        if (idempotencyKeys) {
+            request.header(IdempotencyStore.HEADER, UUID.randomUUID().toString());
+        }
+        return request.build();
+    }
+
+    void report(PrintStream out) throws IOException {
+        Files.createDirectories(REPORT_DIR);
+        double seconds = duration.toMillis() / 1000.0;
+        Histogram all = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+
+        out.printf("%n%s, %d clients, %d customers, %s s, %s threads%s%n", stack, threads, customers,
+                duration.toSeconds(), stack.equals("reactive") ? "event loop" : virtualThreads ? "virtual" : "platform",
+                hotAccounts > 0 ? ", " + hotAccounts + " hot accounts" : "");
+        out.printf("%-10s %10s %10s %9s %9s %9s %9s %9s %9s%n", "operation", "count", "ops/s", "rejected",
+                "failed", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            all.add(histogram);
+            printRow(out, operation.name().toLowerCase(), histogram, seconds, rejected.get(operation).sum(),
+                    failed.get(operation).sum());
+            try (PrintStream file = new PrintStream(
+                    REPORT_DIR.resolve(operation.name().toLowerCase() + ".hgrm").toFile())) {
+                histogram.outputPercentileDistribution(file, 1_000_000.0);
+            }
+        }
+        printRow(out, "all", all, seconds, rejected.values().stream().mapToLong(LongAdder::sum).sum(),
+                failed.values().stream().mapToLong(LongAdder::sum).sum());
+        try (PrintStream file = new PrintStream(REPORT_DIR.resolve("all.hgrm").toFile())) {
+            all.outputPercentileDistribution(file, 1_000_000.0);
+        }
+        out.printf("Percentile distributions written to %s%n", REPORT_DIR.toAbsolutePath());
+    }
+
+    static void printRow(PrintStream out, String name, Histogram histogram, double seconds, long rejected,
+            long failed) {
+        out.printf("%-10s %10d %10.1f %9d %9d %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds, rejected, failed,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxValue() / 1e6);
+    }
+
+    boolean checkConservation(JdbcTemplate jdbc, PrintStream out) {
+        BigDecimal expectedTotal = seedBalance.multiply(BigDecimal.valueOf(sampler.accounts));
+        // Hot accounts hold part of their balance in account_shards.
+        BigDecimal total = jdbc.queryForObject("SELECT (SELECT COALESCE(SUM(balance), 0) FROM accounts) "
+                + "+ (SELECT COALESCE(SUM(balance), 0) FROM account_shards)", BigDecimal.class);
+        boolean totalConserved = expectedTotal.compareTo(total) == 0;
+        out.printf("%nTotal balance: expected %s, found %s%s%n", expectedTotal, total,
+                totalConserved ? "" : "  MISMATCH");
+
+        List<String> mismatches = jdbc.query("SELECT a.id, "
+                + "a.balance + (SELECT COALESCE(SUM(s.balance), 0) FROM account_shards s WHERE s.account_id = a.id), "
+                + "(SELECT COALESCE(SUM(t.amount), 0) FROM transactions t WHERE t.receiver_account_id = a.id), "
+                + "(SELECT COALESCE(SUM(t.amount), 0) FROM transactions t WHERE t.sender_account_id = a.id) "
+                + "FROM accounts a ORDER BY a.id", (rs, rowNum) -> {
+                    long id = rs.getLong(1);
+                    BigDecimal initial = id <= sampler.accounts ? seedBalance : BigDecimal.ZERO;
+                    BigDecimal expected = initial.add(rs.getBigDecimal(3)).subtract(rs.getBigDecimal(4));
+                    return expected.compareTo(rs.getBigDecimal(2)) == 0 ? null
+                            : "account " + id + ": expected " + expected + ", found " + rs.getBigDecimal(2);
+                });
+        mismatches.removeIf(mismatch -> mismatch == null);
+        long accounts = jdbc.queryForObject("SELECT COUNT(*) FROM accounts", Long.class);
+        long transfers = jdbc.queryForObject("SELECT COUNT(*) FROM transactions", Long.class);
+        out.printf("Accounts matching their transactions: %d of %d (%d transactions)%n",
+                accounts - mismatches.size(), accounts, transfers);
+        mismatches.stream().limit(20).forEach(out::println);
+
+        return totalConserved && mismatches.isEmpty();
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.demo.Admission;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Admission control for transfers, so one customer sending more than its share
+ * cannot take every database connection from the others. Each sending customer
+ * has a token bucket refilled at bank.admission.transfers-per-second and
+ * holding up to bank.admission.burst transfers, and at most
+ * bank.admission.max-concurrent-transfers transfers run at once overall. A
+ * transfer over either limit is turned away before anything is read, with the
+ * number of seconds after which a retry may succeed.
+ *
+ * A bucket is a single AtomicLong holding the time at which it will be full
+ * again, the generic cell rate algorithm, so taking a token is one
+ * compare-and-set. A bucket is only dropped once it is full again, since a
+ * dropped bucket comes back full, after at least a second or the burst's worth
+ * of time without being used.
+ */
+@Component
+public class AdmissionControl implements MeterBinder {
+
+    public static final long ADMITTED = 0;
+
+    private final boolean enabled;
+    private final long interval;
+    private final long tolerance;
+    private final int maxConcurrent;
+
+    private final Cache<Long, AtomicLong> buckets;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+
+    public AdmissionControl(@Value("${bank.admission.enabled:false}") boolean enabled,
+            @Value("${bank.admission.transfers-per-second:20}") double transfersPerSecond,
+            @Value("${bank.admission.burst:40}") int burst,
+            @Value("${bank.admission.max-concurrent-transfers:32}") int maxConcurrent,
+            @Value("${bank.admission.max-customers:100000}") long maxCustomers) {
+        if (enabled && (transfersPerSecond <= 0 || burst < 1 || maxConcurrent < 1)) {
+            throw new IllegalStateException("bank.admission limits must be positive");
+        }
+        this.enabled = enabled;
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / transfersPerSecond);
+        this.tolerance = interval * burst;
+        this.maxConcurrent = maxConcurrent;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxCustomers)
+                .expireAfter(new UntilFull(Math.max(tolerance, TimeUnit.SECONDS.toNanos(1))))
+                .build();
+    }
+
+    // Caffeine's ticker is System.nanoTime, the clock of the buckets. The expiry
+    // is taken when admit reads a bucket, before it moves the bucket on by at
+    // most the burst, which idle covers. A larger batch puts its bucket back.
+    private record UntilFull(long idle) implements Expiry<Long, AtomicLong> {
+        @Override
+        public long expireAfterCreate(Long customerId, AtomicLong bucket, long currentTime) {
+            return Math.max(bucket.get() - currentTime, 0) + idle;
+        }
+
+        @Override
+        public long expireAfterUpdate(Long customerId, AtomicLong bucket, long currentTime,
+                long currentDuration) {
+            return expireAfterCreate(customerId, bucket, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long customerId, AtomicLong bucket, long currentTime,
+                long currentDuration) {
+            return expireAfterCreate(customerId, bucket, currentTime);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admit a request making transfers for the given sending customers. An
+     * admitted request must call done once it finishes.
+     *
+     * @param transfersByCustomer number of transfers per sending customer id
+     * @return ADMITTED, or the seconds to wait before retrying
+     */
+    public long admit(Map<Long, Integer> transfersByCustomer) {
+        if (!enabled) {
+            return ADMITTED;
+        }
+        long now = System.nanoTime();
+        List<Taken> taken = new ArrayList<>();
+        for (Map.Entry<Long, Integer> transfers : transfersByCustomer.entrySet()) {
+            if (transfers.getKey() == null) {
+                // rejected by validation, the concurrency limit still applies
+                continue;
+            }
+            AtomicLong bucket = buckets.get(transfers.getKey(), id -> new AtomicLong(now));
+            long cost = interval * transfers.getValue();
+            long wait = take(bucket, cost, now);
+            if (wait != ADMITTED) {
+                refund(taken);
+                throttled.increment();
+                return wait;
+            }
+            taken.add(new Taken(bucket, cost));
+            if (cost > tolerance) {
+                // recomputes its expiry, which was taken before the batch moved it on
+                buckets.put(transfers.getKey(), bucket);
+            }
+        }
+
+        // Taken after the buckets, so a throttled customer never holds a slot.
+        int current;
+        do {
+            current = running.get();
+            if (current >= maxConcurrent) {
+                refund(taken);
+                overloaded.increment();
+                return 1;
+            }
+        } while (!running.compareAndSet(current, current + 1));
+        admitted.increment();
+        return ADMITTED;
+    }
+
+    private static void refund(List<Taken> taken) {
+        for (Taken refund : taken) {
+            refund.bucket().addAndGet(-refund.cost());
+        }
+    }
+
+    private record Taken(AtomicLong bucket, long cost) {
+    }
+
+    // Moves the bucket's full-again time forward by the cost, unless that puts it
+    // more than the burst ahead of now. Returns the seconds until it would not.
+    // A batch larger than the burst is let through once the bucket is full.
+    private long take(AtomicLong bucket, long cost, long now) {
+        long limit = Math.max(tolerance, cost);
+        while (true) {
+            long full = bucket.get();
+            long next = Math.max(full, now) + cost;
+            long excess = next - now - limit;
+            if (excess > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(excess + TimeUnit.SECONDS.toNanos(1) - 1));
+            }
+            if (bucket.compareAndSet(full, next)) {
+                return ADMITTED;
+            }
+        }
+    }
+
+    public void done() {
+        if (enabled) {
+            running.decrementAndGet();
+        }
+    }
+
+    // Publishes bank.admission.requests by outcome: admitted, throttled by the
+    // customer's bucket, or overloaded when too many transfers run at once, and
+    // the transfers running and customers with a bucket right now.
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        counter(registry, admitted, "admitted");
+        counter(registry, throttled, "throttled");
+        counter(registry, overloaded, "overloaded");
+        Gauge.builder("bank.admission.running", running, AtomicInteger::get)
+                .description("Transfers admitted and not finished yet")
+                .register(registry);
+        Gauge.builder("bank.admission.buckets", buckets, Cache::estimatedSize)
+                .description("Sending customers with a token bucket")
+                .register(registry);
+    }
+
+    private static void counter(MeterRegistry registry, LongAdder count, String outcome) {
+        FunctionCounter.builder("bank.admission.requests", count, LongAdder::sum)
+                .description("Transfer requests by admission outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.demo.Bank;
+
+import java.math.BigDecimal;
+
+/**
+ * Projection of an account row down to what the balance read model needs.
+ */
+public interface AccountBalance {
+
+    Long getId();
+
+    // The accounts row plus its shards, read with native SQL as the column type.
+    BigDecimal getTotal();
+
+    default Money getBalance() {
+        return Money.of(getTotal());
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.demo.Bank;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serializes work on the same bank accounts inside this instance while letting
+ * work on unrelated accounts run in parallel. Account ids are mapped onto a
+ * fixed array of locks, so memory stays constant no matter how many accounts
+ * exist. Two accounts may share a stripe, which only costs some parallelism.
+ * 
+ * Stripes are always taken in ascending stripe order and each stripe only once.
+ * Ordering by stripe rather than by raw account id is what keeps this deadlock
+ * free: with ids 1 and 1025 on a 1024 stripe array, id order and stripe order
+ * disagree, and two transfers ordering by id could each hold the lock the
+ * other one wants.
+ */
+@Component
+public class AccountLockManager {
+
+    private final ReentrantLock[] locks;
+
+    public AccountLockManager(@Value("${bank.locks.stripes:1024}") int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Lock stripes must be a power of two");
+        }
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Run the action while holding the locks of every given account. Null ids are
+     * ignored so callers can hand in unvalidated requests.
+     * 
+     * @param accountIds
+     * @param action
+     * @return the result of the action
+     */
+    public <T> T withAccountLocks(Collection<Long> accountIds, Supplier<T> action) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Long accountId : accountIds) {
+            if (accountId != null) {
+                stripes.add(stripeFor(accountId));
+            }
+        }
+
+        int locked = 0;
+        Integer[] ordered = stripes.toArray(new Integer[0]);
+        try {
+            for (Integer stripe : ordered) {
+                locks[stripe].lock();
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[ordered[i]].unlock();
+            }
+        }
+    }
+
+    int stripeFor(long accountId) {
+        return Long.hashCode(accountId) & (locks.length - 1);
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.demo.Bank;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.demo.Customer.CustomerRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Opens accounts in bulk, for migrating a partner bank. Requests are read from
+ * a JSON array or from CSV rows of customer_id,initialDeposit as they arrive,
+ * and handled in chunks. Each chunk checks all of its customers with one query
+ * and inserts all of its accounts in one transaction with batched inserts. One
+ * result line per row is written once its chunk is done, in row order, so the
+ * client sees progress while it is still sending.
+ *
+ * Rows are checked the same way createAccount's callers check a single
+ * request. A chunk that fails to insert reports FAILED for its accounts, with
+ * the cause logged rather than sent, and the rows after it are still handled.
+ */
+@Service
+public class AccountOnboardingService {
+
+    public static final String CSV_HEADER = "customer_id,initialDeposit";
+
+    public static final String CHUNK_FAILED = "Accounts of this chunk could not be created";
+
+    private static final Logger log = LoggerFactory.getLogger(AccountOnboardingService.class);
+
+    @Autowired
+    BankAccountRepository bankAccountRepository;
+
+    @Autowired
+    CustomerRepository customerRepository;
+
+    @Autowired
+    BalanceReadModel balanceReadModel;
+
+    @Autowired
+    AccountOwnerIndex accountOwnerIndex;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int chunkSize;
+
+    // Results are flushed into the buffered writer, and to the client once per
+    // chunk, and closing a generator leaves the writer open.
+    private final JsonFactory jsonFactory = new JsonFactory()
+            .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    public AccountOnboardingService(PlatformTransactionManager transactionManager,
+            @Value("${bank.onboarding.chunk-size:1000}") int chunkSize) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    // One request as read, or why it could not be read.
+    private record Row(int number, CreateAccountRequest request, String error) {
+    }
+
+    private interface RowReader {
+        // The next row, or null after the last one.
+        Row next() throws IOException;
+    }
+
+    /**
+     * Open an account for every request read from the input, and write one
+     * NDJSON line per row to the output: the row number counted from 1, its
+     * OnboardingStatus, the new account_id when created, and a message when the
+     * row could not be read or written.
+     *
+     * @param in
+     * @param csv true for CSV rows, false for a JSON array
+     * @param out
+     */
+    public void onboard(InputStream in, boolean csv, OutputStream out) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try (JsonGenerator json = jsonFactory.createGenerator(writer)) {
+            RowReader rows = csv ? csvRows(in) : jsonRows(in);
+            json.setRootValueSeparator(null);
+
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            Row row;
+            while ((row = rows.next()) != null) {
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    onboard(chunk, json, writer);
+                    chunk.clear();
+                }
+            }
+            onboard(chunk, json, writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void onboard(List<Row> chunk, JsonGenerator json, Writer writer) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<Long> customerIds = new HashSet<>();
+        for (Row row : chunk) {
+            if (row.request() != null && row.request().getCustomer_id() != null) {
+                customerIds.add(row.request().getCustomer_id());
+            }
+        }
+        Set<Long> existing = customerIds.isEmpty() ? Set.of() : customerRepository.findExistingIds(customerIds);
+
+        OnboardingStatus[] statuses = new OnboardingStatus[chunk.size()];
+        BankAccount[] accounts = new BankAccount[chunk.size()];
+        List<BankAccount> created = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            CreateAccountRequest request = chunk.get(i).request();
+            if (request == null) {
+                statuses[i] = OnboardingStatus.BAD_ROW;
+            } else if (request.getCustomer_id() == null || !existing.contains(request.getCustomer_id())) {
+                statuses[i] = OnboardingStatus.BAD_CUSTOMER_ID;
+            } else if (request.getInitialDeposit() == null || request.getInitialDeposit().isNegative()) {
+                statuses[i] = OnboardingStatus.BAD_INITIAL_DEPOSIT;
+            } else {
+                statuses[i] = OnboardingStatus.CREATED;
+                accounts[i] = new BankAccount(request.getCustomer_id(), request.getInitialDeposit());
+                created.add(accounts[i]);
+            }
+        }
+
+        String failure = null;
+        if (!created.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> createAccounts(created));
+            } catch (RuntimeException e) {
+                log.warn("Onboarding rows {} to {} failed", chunk.get(0).number(),
+                        chunk.get(chunk.size() - 1).number(), e);
+                failure = CHUNK_FAILED;
+            }
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            Row row = chunk.get(i);
+            json.writeStartObject();
+            json.writeNumberField("row", row.number());
+            if (statuses[i] == OnboardingStatus.CREATED && failure != null) {
+                json.writeStringField("status", OnboardingStatus.FAILED.name());
+                json.writeStringField("message", failure);
+            } else {
+                json.writeStringField("status", statuses[i].name());
+                if (accounts[i] != null) {
+                    json.writeNumberField("account_id", accounts[i].getId());
+                }
+                if (row.error() != null) {
+                    json.writeStringField("message", row.error());
+                }
+            }
+            json.writeEndObject();
+            json.flush();
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    // Inserted in JDBC batches of the whole chunk, then dropped from the
+    // persistence context so it does not grow with the upload.
+    private void createAccounts(List<BankAccount> accounts) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(chunkSize);
+        bankAccountRepository.saveAll(accounts);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<BalanceChange> changes = new ArrayList<>(accounts.size());
+        for (BankAccount account : accounts) {
+            changes.add(new BalanceChange(account.getCustomer_id(), account.getId(), account.getBalance()));
+        }
+        balanceReadModel.record(changes);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (BankAccount account : accounts) {
+                    accountOwnerIndex.put(account.getId(), account.getCustomer_id());
+                }
+            }
+        });
+    }
+
+    // A malformed element leaves the parser unable to find the next one, so it
+    // ends the upload after being reported.
+    private RowReader jsonRows(InputStream in) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(in);
+        return new RowReader() {
+            int number;
+            boolean done;
+
+            @Override
+            public Row next() throws IOException {
+                if (done) {
+                    return null;
+                }
+                number++;
+                try {
+                    JsonToken token = parser.nextToken();
+                    if (number == 1) {
+                        if (token != JsonToken.START_ARRAY) {
+                            done = true;
+                            return new Row(number, null, "Expected a JSON array of account requests");
+                        }
+                        token = parser.nextToken();
+                    }
+                    if (token == null || token == JsonToken.END_ARRAY) {
+                        done = true;
+                        return null;
+                    }
+                    return new Row(number, objectMapper.readValue(parser, CreateAccountRequest.class), null);
+                } catch (JsonProcessingException | ArithmeticException e) {
+                    done = true;
+                    return new Row(number, null, e.getMessage());
+                }
+            }
+        };
+    }
+
+    // The header line is optional. A malformed line is reported and skipped.
+    private RowReader csvRows(InputStream in) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return new RowReader() {
+            int number;
+            boolean first = true;
+
+            @Override
+            public Row next() throws IOException {
+                String line;
+                do {
+                    line = reader.readLine();
+                    if (line == null) {
+                        return null;
+                    }
+                    line = line.strip();
+                    if (first && line.equalsIgnoreCase(CSV_HEADER)) {
+                        line = "";
+                    }
+                    first = first && line.isEmpty();
+                } while (line.isEmpty());
+
+                number++;
+                String[] fields = line.split(",", -1);
+                if (fields.length != 2) {
+                    return new Row(number, null, "Expected " + CSV_HEADER);
+                }
+                try {
+                    return new Row(number, new CreateAccountRequest(Long.valueOf(fields[0].strip()),
+                            Money.of(fields[1].strip())), null);
+                } catch (NumberFormatException | ArithmeticException e) {
+                    return new Row(number, null, "Expected " + CSV_HEADER + ": " + line);
+                }
+            }
+        };
+    }
+
+}
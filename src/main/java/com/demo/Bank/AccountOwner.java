@@ -0,0 +1,12 @@
+package com.demo.Bank;
+
+/**
+ * Projection of an account row down to what the AccountOwnerIndex needs.
+ */
+public interface AccountOwner {
+
+    Long getId();
+
+    Long getCustomerId();
+
+}
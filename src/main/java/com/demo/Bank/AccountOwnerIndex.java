@@ -0,0 +1,234 @@
+package com.demo.Bank;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Account id to owning customer id, for the ownership checks of every
+ * transfer. Held in two parallel long arrays with open addressing and linear
+ * probing, so a lookup neither allocates nor boxes. The index is loaded from
+ * the accounts table at startup and new accounts are added once they commit.
+ * Accounts never change owner and are never deleted, so an entry never goes
+ * stale. An id that is missing is looked up in the database and added if it
+ * exists, which covers accounts written by anything but BankAccountService.
+ *
+ * Footprint: the capacity is the smallest power of two that keeps the load at
+ * or below 3/4, at 16 bytes per slot. 10M accounts take 256 MiB, 50M fit 2^26
+ * slots, 1 GiB. A HashMap<Long, Long> of 10M accounts measured 826 MiB, about
+ * 87 bytes per entry (node, boxed key, boxed value, slot), so over 4 GiB at
+ * 50M, and each lookup boxes its key. See AccountOwnerIndexBenchmarks.
+ *
+ * Lookups take no lock. Inserts are serialized, write the value before the key
+ * with release semantics, and publish a grown table only once it is filled.
+ */
+@Component
+public class AccountOwnerIndex implements SmartLifecycle {
+
+    // Account ids come from a sequence starting at 1, so 0 marks an empty slot.
+    public static final long NONE = 0;
+
+    static final int MIN_CAPACITY = 1024;
+
+    // Loaded before the web server takes requests.
+    static final int PHASE = 0;
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final Logger log = LoggerFactory.getLogger(AccountOwnerIndex.class);
+
+    private final BankAccountRepository bankAccountRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+    private int size;
+
+    private volatile boolean running;
+
+    public AccountOwnerIndex(BankAccountRepository bankAccountRepository,
+            PlatformTransactionManager transactionManager) {
+        this.bankAccountRepository = bankAccountRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final long[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        // The entry's value, or NONE when the key is absent or still being written.
+        long get(long key) {
+            for (int slot = slot(key, mask);; slot = (slot + 1) & mask) {
+                long found = (long) SLOTS.getAcquire(keys, slot);
+                if (found == key) {
+                    return (long) SLOTS.getAcquire(values, slot);
+                }
+                if (found == NONE) {
+                    return NONE;
+                }
+            }
+        }
+
+        // Returns false if the key was already present. Callers hold the index's lock.
+        boolean put(long key, long value) {
+            for (int slot = slot(key, mask);; slot = (slot + 1) & mask) {
+                long found = keys[slot];
+                if (found == key) {
+                    return false;
+                }
+                if (found == NONE) {
+                    SLOTS.setRelease(values, slot, value);
+                    SLOTS.setRelease(keys, slot, key);
+                    return true;
+                }
+            }
+        }
+    }
+
+    // Sequential ids would fill runs of neighbouring slots, so the bits are mixed first.
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    static int capacityFor(long entries) {
+        long capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < entries) {
+            capacity <<= 1;
+        }
+        if (capacity > 1 << 30) {
+            throw new IllegalStateException("Too many accounts for the owner index: " + entries);
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * @param accountId
+     * @return the id of the customer owning the account, or NONE if there is no
+     *         such account
+     */
+    public long ownerOf(Long accountId) {
+        return accountId == null ? NONE : ownerOf(accountId.longValue());
+    }
+
+    public long ownerOf(long accountId) {
+        if (accountId == NONE) {
+            return NONE;
+        }
+        long owner = table.get(accountId);
+        if (owner != NONE) {
+            return owner;
+        }
+        Long customerId = bankAccountRepository.findCustomerIdById(accountId);
+        if (customerId == null) {
+            return NONE;
+        }
+        put(accountId, customerId);
+        return customerId;
+    }
+
+    /**
+     * Add an account that has committed.
+     *
+     * @param accountId
+     * @param customerId
+     */
+    public synchronized void put(long accountId, long customerId) {
+        if (accountId == NONE) {
+            throw new IllegalArgumentException("Account id 0 cannot be indexed");
+        }
+        Table current = table;
+        if ((long) (size + 1) * 4 > (long) current.keys.length * 3) {
+            current = grow(current, capacityFor(size + 1L));
+        }
+        if (current.put(accountId, customerId)) {
+            size++;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Bytes held by the two arrays.
+    public long footprintBytes() {
+        return (long) table.keys.length * Long.BYTES * 2;
+    }
+
+    private Table grow(Table current, int capacity) {
+        Table grown = new Table(capacity);
+        for (int slot = 0; slot < current.keys.length; slot++) {
+            if (current.keys[slot] != NONE) {
+                grown.put(current.keys[slot], current.values[slot]);
+            }
+        }
+        table = grown;
+        return grown;
+    }
+
+    private synchronized void load() {
+        long started = System.nanoTime();
+        Table loaded = new Table(capacityFor(bankAccountRepository.count()));
+        int loadedSize = readOnlyTransaction.execute(status -> {
+            int entries = 0;
+            try (Stream<AccountOwner> owners = bankAccountRepository.streamOwners()) {
+                for (AccountOwner owner : (Iterable<AccountOwner>) owners::iterator) {
+                    if (loaded.put(owner.getId(), owner.getCustomerId())) {
+                        entries++;
+                    }
+                }
+            }
+            return entries;
+        });
+        // keep anything added while loading
+        Table current = table;
+        for (int slot = 0; slot < current.keys.length; slot++) {
+            if (current.keys[slot] != NONE && loaded.put(current.keys[slot], current.values[slot])) {
+                loadedSize++;
+            }
+        }
+        table = loaded;
+        size = loadedSize;
+        if ((long) size * 4 > (long) loaded.keys.length * 3) {
+            grow(loaded, capacityFor(size));
+        }
+        log.info("Indexed the owners of {} accounts in {} ms, {} MiB", size,
+                (System.nanoTime() - started) / 1_000_000, footprintBytes() >> 20);
+    }
+
+    @Override
+    public void start() {
+        load();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+}
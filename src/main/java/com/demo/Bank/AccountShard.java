@@ -0,0 +1,52 @@
+package com.demo.Bank;
+
+import java.io.Serializable;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One credit shard of a hot account, see HotAccounts. The account's balance is
+ * its accounts row plus all of its shards.
+ */
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@IdClass(AccountShard.Key.class)
+@Table(name = "account_shards")
+public class AccountShard {
+
+    public AccountShard(Long accountId, Integer shard) {
+        this.setAccountId(accountId);
+        this.setShard(shard);
+        this.setBalance(Money.ZERO);
+    }
+
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @Id
+    @Column(name = "shard")
+    private Integer shard;
+
+    @ColumnDefault("0.00")
+    @Column(name = "balance", nullable = false, precision = 9, scale = 2)
+    private Money balance;
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long accountId;
+        private Integer shard;
+    }
+
+}
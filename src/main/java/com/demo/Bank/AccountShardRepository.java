@@ -0,0 +1,30 @@
+package com.demo.Bank;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface AccountShardRepository extends JpaRepository<AccountShard, AccountShard.Key> {
+    @Query("SELECT DISTINCT s.accountId FROM AccountShard s")
+    List<Long> findAccountIds();
+
+    @Query("SELECT s.shard FROM AccountShard s WHERE s.accountId = :id")
+    List<Integer> findShardsByAccountId(@Param("id") Long id);
+
+    // Row locks are taken in shard order, the same order every folder uses.
+    @Query(value = "SELECT balance FROM account_shards WHERE account_id = :id ORDER BY shard FOR UPDATE", nativeQuery = true)
+    List<BigDecimal> findBalancesForUpdate(@Param("id") Long id);
+
+    // Returns the number of rows updated, 0 if the account has no such shard.
+    @Modifying
+    @Query(value = "UPDATE account_shards SET balance = balance + :amount WHERE account_id = :id AND shard = :shard", nativeQuery = true)
+    int credit(@Param("id") Long id, @Param("shard") int shard, @Param("amount") BigDecimal amount);
+
+    @Modifying
+    @Query(value = "UPDATE account_shards SET balance = 0 WHERE account_id = :id", nativeQuery = true)
+    int clear(@Param("id") Long id);
+}
@@ -0,0 +1,8 @@
+package com.demo.Bank;
+
+/**
+ * A committed change to one account's balance. For a new account the delta is
+ * its opening balance.
+ */
+public record BalanceChange(Long customerId, Long accountId, Money delta) {
+}
@@ -0,0 +1,277 @@
+package com.demo.Bank;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Per-customer balance summaries kept in memory and updated incrementally as
+ * transfers and new accounts commit, so a balance read is a map lookup rather
+ * than an aggregate query. A customer that is not in memory is loaded with one
+ * indexed query on accounts.customer_id.
+ * 
+ * Writers announce themselves before they commit and report back after they
+ * finish. A loaded summary is only kept if no writer touched the customer
+ * while it was being read. Otherwise a change could be counted twice, once in
+ * the rows read and again when its delta is applied.
+ * 
+ * Concurrent loads of the same customer share one query. A reader only joins a
+ * load that started while no writer was in flight for the customer, and only
+ * if no writer has started since, so it never gets balances older than a
+ * transfer that committed before it asked.
+ *
+ * Transfers committed by other instances never reach the summaries, so each
+ * one is dropped the ttl after it was loaded, however often it was updated
+ * since.
+ *
+ * The write counters are bounded by the same max-size as the summaries. A
+ * customer with a write in flight weighs nothing and is never evicted. A
+ * customer whose counters were evicted starts again from the number of writes
+ * started for all customers, which no version handed out for it before can
+ * exceed, so an old version can only match again if nothing was written since.
+ */
+@Component
+public class BalanceReadModel implements MeterBinder {
+
+    private final BankAccountRepository bankAccountRepository;
+
+    private final Cache<Long, CustomerBalanceSummary> summaries;
+
+    private final Cache<Long, WriteCounters> writes;
+
+    private final AtomicLong writesStarted = new AtomicLong();
+
+    private final ConcurrentHashMap<Long, Flight> flights = new ConcurrentHashMap<>();
+
+    private final String instanceId = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+
+    private final LongAdder queried = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+
+    public BalanceReadModel(BankAccountRepository bankAccountRepository,
+            @Value("${bank.balance-read-model.max-size:100000}") long maxSize,
+            @Value("${bank.balance-read-model.ttl:1m}") Duration ttl) {
+        this.bankAccountRepository = bankAccountRepository;
+        this.summaries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new SinceLoad(ttl.toNanos()))
+                .recordStats()
+                .build();
+        this.writes = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((Long customerId, WriteCounters counters) -> counters.inFlight() ? 0 : 1)
+                .build();
+    }
+
+    /**
+     * @param customerId
+     * @return the customer's current balances, empty if the customer has no
+     *         accounts
+     */
+    public CustomerBalanceSummary get(Long customerId) {
+        CustomerBalanceSummary summary = summaries.getIfPresent(customerId);
+        if (summary != null) {
+            return summary;
+        }
+        return load(customerId);
+    }
+
+    CustomerBalanceSummary load(Long customerId) {
+        while (true) {
+            WriteCounters counters = counters(customerId);
+            long started = counters.started();
+            boolean quiet = !counters.inFlight();
+
+            Flight flight = flights.get(customerId);
+            if (flight != null && flight.quiet() && flight.started() == started) {
+                joined.increment();
+                return join(flight);
+            }
+
+            Flight own = new Flight(started, quiet, new CompletableFuture<>());
+            if (flight == null ? flights.putIfAbsent(customerId, own) != null
+                    : !flights.replace(customerId, flight, own)) {
+                continue;
+            }
+            try {
+                queried.increment();
+                CustomerBalanceSummary summary = CustomerBalanceSummary
+                        .of(bankAccountRepository.findAccountBalancesByCustomerId(customerId));
+
+                // under the customer's counters, so no write can start in between
+                writes.asMap().computeIfPresent(customerId, (id, now) -> {
+                    if (quiet && now.started() == started) {
+                        summaries.asMap().putIfAbsent(customerId, summary);
+                    }
+                    return now;
+                });
+                own.result().complete(summary);
+                return summary;
+            } catch (RuntimeException e) {
+                own.result().completeExceptionally(e);
+                throw e;
+            } finally {
+                flights.remove(customerId, own);
+            }
+        }
+    }
+
+    // Counted from the load only. Applying a delta does not make the rest of the
+    // summary any fresher.
+    private record SinceLoad(long ttl) implements Expiry<Long, CustomerBalanceSummary> {
+        @Override
+        public long expireAfterCreate(Long customerId, CustomerBalanceSummary summary, long currentTime) {
+            return ttl;
+        }
+
+        @Override
+        public long expireAfterUpdate(Long customerId, CustomerBalanceSummary summary, long currentTime,
+                long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(Long customerId, CustomerBalanceSummary summary, long currentTime,
+                long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    // Waits without holding a monitor, so a virtual thread does not pin its carrier.
+    private static CustomerBalanceSummary join(Flight flight) {
+        try {
+            return flight.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Record balance changes made by the current database transaction. Must be
+     * called inside that transaction. The changes are applied once it commits
+     * and dropped if it rolls back.
+     * 
+     * @param changes
+     */
+    public void record(Collection<BalanceChange> changes) {
+        Set<Long> customerIds = new LinkedHashSet<>();
+        for (BalanceChange change : changes) {
+            customerIds.add(change.customerId());
+        }
+        for (Long customerId : customerIds) {
+            // counted for all customers first, see newCounters
+            writesStarted.incrementAndGet();
+            writes.asMap().compute(customerId, (id, counters) -> {
+                WriteCounters current = counters != null ? counters : newCounters(writesStarted.get() - 1);
+                return new WriteCounters(current.started() + 1, current.finished());
+            });
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (BalanceChange change : changes) {
+                    summaries.asMap().computeIfPresent(change.customerId(),
+                            (id, summary) -> summary.plus(change.accountId(), change.delta()));
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                // in flight until now, so never evicted
+                for (Long customerId : customerIds) {
+                    writes.asMap().computeIfPresent(customerId,
+                            (id, counters) -> new WriteCounters(counters.started(), counters.finished() + 1));
+                }
+            }
+        });
+    }
+
+    /**
+     * Version of the customer's accounts, which goes up with every write
+     * started, or -1 while any write is still in flight. Taken before reading
+     * the customer's balances or history, the same non-negative version later on
+     * means nothing has been committed for the customer in between. Never goes
+     * down, but starts over with each instance, see getInstanceId.
+     * 
+     * @param customerId
+     * @return
+     */
+    public long version(Long customerId) {
+        WriteCounters counters = counters(customerId);
+        return counters.inFlight() ? -1 : counters.started();
+    }
+
+    // Tells versions of different instances, or of one before and after a restart, apart.
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    // Publishes size, hits and misses as the "balances" cache, each load of a
+    // missing customer as bank.balance.loads, by whether it ran the query or
+    // joined one already in flight, and the customers with write counters.
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(summaries, "balances", Tags.empty()).bindTo(registry);
+        FunctionCounter.builder("bank.balance.loads", queried, LongAdder::sum)
+                .description("Balance loads of customers missing from the read model")
+                .tag("flight", "queried")
+                .register(registry);
+        FunctionCounter.builder("bank.balance.loads", joined, LongAdder::sum)
+                .description("Balance loads of customers missing from the read model")
+                .tag("flight", "joined")
+                .register(registry);
+        Gauge.builder("bank.balance.write-counters", writes, Cache::estimatedSize)
+                .description("Customers whose writes are counted for balance loads and ETags")
+                .register(registry);
+    }
+
+    private WriteCounters counters(Long customerId) {
+        return writes.get(customerId, id -> newCounters(writesStarted.get()));
+    }
+
+    // Every version handed out for the customer before is at most the number of
+    // writes started for all customers at the time, because that number is
+    // counted before the customer's own.
+    private static WriteCounters newCounters(long writesStarted) {
+        return new WriteCounters(writesStarted, writesStarted);
+    }
+
+    // One query in flight, and the write counters it started under.
+    private record Flight(long started, boolean quiet, CompletableFuture<CustomerBalanceSummary> result) {
+    }
+
+    // Replaced rather than changed, so the cache weighs every update.
+    private record WriteCounters(long started, long finished) {
+        boolean inFlight() {
+            return started != finished;
+        }
+    }
+
+}
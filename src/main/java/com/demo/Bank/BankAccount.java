@@ -1,6 +1,6 @@
 package com.demo.Bank;
 
-import java.math.BigDecimal;
+import org.hibernate.annotations.ColumnDefault;
 
 import jakarta.persistence.*;
 import lombok.Getter;
@@ -11,23 +11,30 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
-@Table(name = "accounts")
+@Table(name = "accounts", indexes = @Index(name = "idx_accounts_customer", columnList = "customer_id"))
 public class BankAccount {
 
-    public BankAccount(Long customerId, BigDecimal initialDeposit) {
+    public BankAccount(Long customerId, Money initialDeposit) {
         this.setCustomer_id(customerId);
         this.setBalance(initialDeposit);
     }
 
+    // Sequence ids let Hibernate batch inserts, IDENTITY forces one insert per row.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "accounts_seq")
+    @SequenceGenerator(name = "accounts_seq", sequenceName = "accounts_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "customer_id", nullable = false)
     private Long customer_id;
 
-    @Column(name = "balance", nullable = false, precision = 9, scale = 2, columnDefinition = "DECIMAL(9,2) default '0.00'")
-    private BigDecimal balance;
+    @ColumnDefault("0.00")
+    @Column(name = "balance", nullable = false, precision = 9, scale = 2)
+    private Money balance;
+
+    // Sequence of the last journaled transfer debited from this account.
+    @Column(name = "journal_sequence")
+    private Long journalSequence;
 
     public String toString() {
         return "balance for account number " + id + ": " + balance;
@@ -1,13 +1,71 @@
 package com.demo.Bank;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
 public interface BankAccountRepository extends JpaRepository<BankAccount, Long> {
-    @Query("SELECT a.balance, SUM(a.balance) AS balance FROM BankAccount a JOIN Customer c ON c.id = :id WHERE a.customer_id = c.id GROUP BY a.id")
-    List<BigDecimal> getBalances(@Param("id") Long id);
-}
\ No newline at end of file
+    default List<Money> getBalances(Long id) {
+        return findAccountBalancesByCustomerId(id).stream().map(AccountBalance::getBalance).toList();
+    }
+
+    // The accounts row plus the shards of hot accounts, read in one statement so a
+    // concurrent fold is either fully in or fully out.
+    @Query(value = "SELECT a.id AS id, a.balance + COALESCE(SUM(s.balance), 0) AS total FROM accounts a LEFT JOIN account_shards s ON s.account_id = a.id WHERE a.customer_id = :id GROUP BY a.id, a.balance ORDER BY a.id", nativeQuery = true)
+    List<AccountBalance> findAccountBalancesByCustomerId(@Param("id") Long id);
+
+    // Same sum as above for the given accounts. Ids without an account are left out.
+    @Query(value = "SELECT a.id AS id, a.balance + COALESCE(SUM(s.balance), 0) AS total FROM accounts a LEFT JOIN account_shards s ON s.account_id = a.id WHERE a.id IN :ids GROUP BY a.id, a.balance", nativeQuery = true)
+    List<AccountBalance> findAccountBalancesByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT a.customer_id FROM BankAccount a WHERE a.id = :id")
+    Long findCustomerIdById(@Param("id") Long id);
+
+    // Read forward-only in chunks of the fetch size. Must be consumed, and closed,
+    // inside a transaction.
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+    @Query("SELECT a.id AS id, a.customer_id AS customerId FROM BankAccount a")
+    Stream<AccountOwner> streamOwners();
+
+    @Query("SELECT a.id FROM BankAccount a WHERE a.customer_id = :id ORDER BY a.id")
+    List<Long> findIdsByCustomerId(@Param("id") Long id);
+
+    // Row locks are taken in ascending id order, the same order single transfers use.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM BankAccount a WHERE a.id IN :ids ORDER BY a.id")
+    List<BankAccount> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    // Only succeeds while the balance covers the amount. Returns the number of rows updated.
+    // Also stamps the transfer's journal sequence, null when the journal is disabled.
+    // Written in SQL because Hibernate cannot do arithmetic on the converted Money
+    // attribute. Amounts are bound as BigDecimal, the column type.
+    @Modifying
+    @Query(value = "UPDATE accounts SET balance = balance - :amount, journal_sequence = :journalSequence WHERE id = :id AND balance >= :amount", nativeQuery = true)
+    int debit(@Param("id") Long id, @Param("amount") BigDecimal amount,
+            @Param("journalSequence") Long journalSequence);
+
+    // Locks the row without loading the entity. Returns null if there is no such account.
+    @Query(value = "SELECT id FROM accounts WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Long lockById(@Param("id") Long id);
+
+    @Query("SELECT a.journalSequence FROM BankAccount a WHERE a.id = :id")
+    Long findJournalSequence(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "UPDATE accounts SET balance = balance + :amount WHERE id = :id", nativeQuery = true)
+    int credit(@Param("id") Long id, @Param("amount") BigDecimal amount);
+}
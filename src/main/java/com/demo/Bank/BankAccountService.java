@@ -0,0 +1,47 @@
+package com.demo.Bank;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@Service
+public class BankAccountService {
+
+    @Autowired
+    BankAccountRepository bankAccountRepository;
+
+    @Autowired
+    BalanceReadModel balanceReadModel;
+
+    @Autowired
+    AccountOwnerIndex accountOwnerIndex;
+
+    /**
+     * Open a new account for an existing customer with the requested initial
+     * deposit, and record it in the balance read model and the owner index once
+     * it commits. Callers validate the customer and the deposit.
+     * 
+     * @param request
+     * @return the saved account
+     */
+    @Transactional
+    public BankAccount createAccount(CreateAccountRequest request) {
+        BankAccount account = bankAccountRepository
+                .save(new BankAccount(request.getCustomer_id(), request.getInitialDeposit()));
+
+        balanceReadModel.record(List.of(
+                new BalanceChange(account.getCustomer_id(), account.getId(), account.getBalance())));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accountOwnerIndex.put(account.getId(), account.getCustomer_id());
+            }
+        });
+        return account;
+    }
+
+}
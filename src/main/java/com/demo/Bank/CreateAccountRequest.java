@@ -1,7 +1,5 @@
 package com.demo.Bank;
 
-import java.math.BigDecimal;
-
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -23,9 +21,9 @@ public class CreateAccountRequest {
     @JoinColumn(name = "customer_id", referencedColumnName = "id", insertable = false, updatable = false)
     private Long customer_id;
 
-    private BigDecimal initialDeposit;
+    private Money initialDeposit;
 
-    public CreateAccountRequest(Long customer_id, BigDecimal initialDeposit) {
+    public CreateAccountRequest(Long customer_id, Money initialDeposit) {
         this.customer_id = customer_id;
         this.initialDeposit = initialDeposit;
     }
@@ -0,0 +1,60 @@
+package com.demo.Bank;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable snapshot of one customer's account balances, ordered by account id,
+ * and their total. Changes produce a new summary.
+ */
+public final class CustomerBalanceSummary {
+
+    private final Map<Long, Money> balances;
+
+    private final Money total;
+
+    private CustomerBalanceSummary(TreeMap<Long, Money> balances, Money total) {
+        this.balances = Collections.unmodifiableMap(balances);
+        this.total = total;
+    }
+
+    public static CustomerBalanceSummary of(List<AccountBalance> accounts) {
+        TreeMap<Long, Money> balances = new TreeMap<>();
+        Money total = Money.ZERO;
+        for (AccountBalance account : accounts) {
+            Money balance = account.getBalance();
+            balances.put(account.getId(), balance);
+            total = total.plus(balance);
+        }
+        return new CustomerBalanceSummary(balances, total);
+    }
+
+    /**
+     * Apply a delta to an account, adding the account if it is new.
+     * 
+     * @param accountId
+     * @param delta
+     * @return
+     */
+    public CustomerBalanceSummary plus(Long accountId, Money delta) {
+        TreeMap<Long, Money> next = new TreeMap<>(balances);
+        next.put(accountId, next.getOrDefault(accountId, Money.ZERO).plus(delta));
+        return new CustomerBalanceSummary(next, total.plus(delta));
+    }
+
+    // account id -> balance, in ascending account id order
+    public Map<Long, Money> getBalances() {
+        return balances;
+    }
+
+    public Money getTotal() {
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return balances.isEmpty();
+    }
+
+}
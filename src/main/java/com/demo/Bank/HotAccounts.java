@@ -0,0 +1,194 @@
+package com.demo.Bank;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Sub-balances for accounts that receive more credits than a single row lock
+ * lets through. A hot account's balance is its accounts row plus all of its
+ * rows in account_shards. Credits go to a randomly picked shard, so concurrent
+ * credits to the same account mostly lock different rows. Debits fold the
+ * shards back into the accounts row first, so the guarded debit sees the whole
+ * balance, and a background thread folds every hot account once per fold
+ * interval to keep the shards small.
+ *
+ * Within one account the accounts row is always locked before its shards, and
+ * the shards in shard order. A credit only locks one shard. Transfers and
+ * batches take accounts in ascending id order, so this stays deadlock free.
+ *
+ * Accounts are flagged with bank.hot-accounts.ids or enable, and stay hot for
+ * as long as they have shard rows.
+ */
+@Component
+public class HotAccounts implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(HotAccounts.class);
+
+    private final BankAccountRepository bankAccountRepository;
+    private final AccountShardRepository accountShardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final List<Long> configuredIds;
+    private final int shards;
+    private final long foldIntervalMillis;
+
+    private final Set<Long> hot = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+    private Thread folder;
+
+    public HotAccounts(BankAccountRepository bankAccountRepository, AccountShardRepository accountShardRepository,
+            TransactionTemplate transactionTemplate, @Value("${bank.hot-accounts.ids:}") List<Long> configuredIds,
+            @Value("${bank.hot-accounts.shards:8}") int shards,
+            @Value("${bank.hot-accounts.fold-interval-ms:1000}") long foldIntervalMillis) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Hot accounts need at least one shard");
+        }
+        this.bankAccountRepository = bankAccountRepository;
+        this.accountShardRepository = accountShardRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.configuredIds = configuredIds;
+        this.shards = shards;
+        this.foldIntervalMillis = foldIntervalMillis;
+    }
+
+    public boolean isHot(Long accountId) {
+        return accountId != null && hot.contains(accountId);
+    }
+
+    /**
+     * Give an existing account its shard rows, in a transaction of its own, and
+     * send its credits there from now on.
+     *
+     * @param accountId
+     * @return false if there is no account with that id
+     */
+    public boolean enable(Long accountId) {
+        Boolean enabled = transactionTemplate.execute(status -> {
+            if (bankAccountRepository.lockById(accountId) == null) {
+                return false;
+            }
+            Set<Integer> existing = new HashSet<>(accountShardRepository.findShardsByAccountId(accountId));
+            for (int shard = 0; shard < shards; shard++) {
+                if (!existing.contains(shard)) {
+                    accountShardRepository.save(new AccountShard(accountId, shard));
+                }
+            }
+            return true;
+        });
+        // only once the shard rows have committed
+        if (Boolean.TRUE.equals(enabled)) {
+            hot.add(accountId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add the amount to one of the account's shards. Returns the number of rows
+     * updated, as BankAccountRepository.credit does.
+     *
+     * @param accountId
+     * @param amount
+     * @return
+     */
+    public int credit(Long accountId, BigDecimal amount) {
+        return accountShardRepository.credit(accountId, ThreadLocalRandom.current().nextInt(shards), amount);
+    }
+
+    /**
+     * Move everything the shards of a hot account hold into its accounts row.
+     * Must be called inside a transaction, which keeps the row and the shards
+     * locked until it ends.
+     *
+     * @param accountId
+     */
+    public void fold(Long accountId) {
+        bankAccountRepository.lockById(accountId);
+        Money folded = drainShards(accountId);
+        if (!folded.equals(Money.ZERO)) {
+            bankAccountRepository.credit(accountId, folded.toBigDecimal());
+        }
+    }
+
+    /**
+     * Zero the shards of a hot account and return what they held, for callers
+     * that add it to an account row they already hold locked. Must be called
+     * inside that transaction.
+     *
+     * @param accountId
+     * @return
+     */
+    public Money drainShards(Long accountId) {
+        Money total = Money.ZERO;
+        for (BigDecimal balance : accountShardRepository.findBalancesForUpdate(accountId)) {
+            total = total.plus(Money.of(balance));
+        }
+        if (!total.equals(Money.ZERO)) {
+            accountShardRepository.clear(accountId);
+        }
+        return total;
+    }
+
+    private void foldLoop() {
+        while (running) {
+            try {
+                Thread.sleep(foldIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Long accountId : hot) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> fold(accountId));
+                } catch (RuntimeException e) {
+                    log.warn("Folding the shards of account {} failed, retrying", accountId, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        hot.addAll(accountShardRepository.findAccountIds());
+        for (Long accountId : configuredIds) {
+            if (!enable(accountId)) {
+                log.warn("Account {} in bank.hot-accounts.ids does not exist", accountId);
+            }
+        }
+
+        running = true;
+        folder = new Thread(this::foldLoop, "hot-account-folder");
+        folder.setDaemon(true);
+        folder.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        folder.interrupt();
+        try {
+            folder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.demo.Bank;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * An amount of money held as a whole number of cents. Arithmetic throws
+ * ArithmeticException on overflow instead of wrapping, and comparisons never
+ * allocate, so balance checks and updates stay off the heap.
+ *
+ * In JSON it is the same decimal number a BigDecimal amount was, and the
+ * MoneyConverter stores it in the existing DECIMAL(9, 2) columns.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    // toString is cached the way BigDecimal caches it, balances are read far more
+    // often than they change.
+    private String string;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Exact conversion from a decimal amount. Amounts with fractions of a cent, or
+     * too large for a long of cents, are rejected with ArithmeticException.
+     *
+     * @param amount
+     * @return
+     */
+    @JsonCreator
+    public static Money of(BigDecimal amount) {
+        return ofCents(amount.movePointRight(SCALE).longValueExact());
+    }
+
+    public static Money of(String amount) {
+        return of(new BigDecimal(amount));
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    public boolean isPositive() {
+        return cents > 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return cents < other.cents;
+    }
+
+    @JsonValue
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money money && money.cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * The amount with both decimal places, "520.00", the way balances have always
+     * been shown.
+     */
+    @Override
+    public String toString() {
+        String result = string;
+        if (result == null) {
+            result = format();
+            string = result;
+        }
+        return result;
+    }
+
+    private String format() {
+        StringBuilder sb = new StringBuilder(24);
+        long units = cents / 100;
+        int fraction = (int) Math.abs(cents % 100);
+        if (cents < 0 && units == 0) {
+            sb.append('-');
+        }
+        sb.append(units).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+    /**
+     * The amount as transaction details show it: whole amounts without decimal
+     * places, "20", anything else with both, "20.50".
+     */
+    public String toDisplayString() {
+        return cents % 100 == 0 ? Long.toString(cents / 100) : toString();
+    }
+
+}
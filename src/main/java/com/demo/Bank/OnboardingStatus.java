@@ -0,0 +1,14 @@
+package com.demo.Bank;
+
+/**
+ * Outcome of one row of a bulk account onboarding, see AccountOnboardingService.
+ */
+public enum OnboardingStatus {
+    CREATED,
+    BAD_CUSTOMER_ID,
+    BAD_INITIAL_DEPOSIT,
+    // The row could not be read at all.
+    BAD_ROW,
+    // The row was valid but its chunk could not be written, it may be sent again.
+    FAILED
+}
@@ -1,29 +1,57 @@
 package com.demo;
 
-import java.math.BigDecimal;
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.demo.Bank.BankAccount;
+import com.demo.Admission.AdmissionControl;
+import com.demo.Bank.AccountLockManager;
+import com.demo.Bank.AccountOnboardingService;
+import com.demo.Bank.BalanceReadModel;
 import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.BankAccountService;
 import com.demo.Bank.CreateAccountRequest;
-import com.demo.Customer.Customer;
+import com.demo.Bank.CustomerBalanceSummary;
+import com.demo.Bank.HotAccounts;
+import com.demo.Bank.Money;
+import com.demo.ControllerMetrics.Failure;
+import com.demo.Customer.CustomerCache;
 import com.demo.Customer.CustomerRepository;
+import com.demo.Idempotency.IdempotencyStore;
+import com.demo.Transaction.ExportFormat;
+import com.demo.Transaction.JournalProjector;
+import com.demo.Transaction.PartitionedTransferExecutor;
 import com.demo.Transaction.Transaction;
+import com.demo.Transaction.TransactionDetails;
+import com.demo.Transaction.TransactionExportService;
+import com.demo.Transaction.TransactionHistoryPage;
+import com.demo.Transaction.TransactionHistoryService;
 import com.demo.Transaction.TransactionRepository;
 import com.demo.Transaction.TransactionRequest;
+import com.demo.Transaction.TransferService;
+import com.demo.Transaction.TransferStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 @RestController
 @RequestMapping("/api")
@@ -32,12 +60,60 @@ class BankController {
     @Autowired
     CustomerRepository customerRepository;
 
+    @Autowired
+    CustomerCache customerCache;
+
     @Autowired
     BankAccountRepository bankAccountRepository;
 
+    @Autowired
+    BankAccountService bankAccountService;
+
+    @Autowired
+    AccountOnboardingService accountOnboardingService;
+
+    @Autowired
+    BalanceReadModel balanceReadModel;
+
     @Autowired
     TransactionRepository transactionRepository;
 
+    @Autowired
+    TransferService transferService;
+
+    @Autowired
+    TransactionHistoryService transactionHistoryService;
+
+    @Autowired
+    TransactionExportService transactionExportService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    AccountLockManager accountLockManager;
+
+    @Autowired
+    HotAccounts hotAccounts;
+
+    @Autowired
+    JournalProjector journalProjector;
+
+    @Autowired
+    TransactionDetails transactionDetails;
+
+    @Autowired
+    PartitionedTransferExecutor partitionedTransferExecutor;
+
+    @Autowired
+    IdempotencyStore idempotencyStore;
+
+    @Autowired
+    AdmissionControl admissionControl;
+
+    @Autowired
+    ControllerMetrics controllerMetrics;
+
     final String BAD_CUSTOMER_ID = "Invalid customer id";
     final String BAD_SENDER_ID = "Invalid sender id";
     final String BAD_RECEIVER_ID = "Invalid receiver id";
@@ -47,6 +123,7 @@ class BankController {
     final String BAD_TRANSACTION_ID = "There was an error retreiving the transactions";
     final String NO_BALANCES_FOUND = "No balances found";
     final String INSUFFICIENT_FUNDS = "Insufficient funds";
+    final String BAD_AMOUNT = "Amount must be greater than zero";
     final String BAD_INITIAL_DEPOSIT = "Initial deposit be a number and equal or greater than zero";
     final String NO_ACCOUNT_FOUND = "No account found with that id";
     final String ACCOUNT_CREATED = "Account successfully created";
@@ -54,72 +131,214 @@ class BankController {
     final String HISTORY_FETCHED = "Returned all transactions";
     final String BAD_SENDER_ACCOUNT_ID = "Sender does not have an account with that id";
     final String BAD_RECEIVER_ACCOUNT_ID = "Receiver does not have an account with that id";
+    final String BAD_PAGE_LIMIT = "Limit must be between 1 and " + TransactionHistoryService.MAX_PAGE_SIZE;
+    final String NEXT_AFTER_ID_HEADER = "Next-After-Id";
+    final String BAD_EXPORT_FORMAT = "Format must be ndjson or csv";
+    final String BAD_IDEMPOTENCY_KEY = "Idempotency key must be at most " + IdempotencyStore.MAX_KEY_LENGTH
+            + " characters";
+    final String BAD_ONBOARDING_FORMAT = "Accounts must be sent as a JSON array or as text/csv";
+    final String TOO_MANY_TRANSFERS = "Too many transfers, retry later";
 
     /**
      * Fetch the transaction history for a given customer id. If a customer id that
      * doesnt exist is handed in, returns an error that the customer does not exist.
      * If the list is empty, return a notification that the list is empty. Else,
-     * return list of transactions.
+     * return list of transactions. The list carries the customer's version as its
+     * ETag, see customerETag, and an If-None-Match with that ETag is answered with
+     * 304 before any transaction is read.
      * 
      * @param id
+     * @param ifNoneMatch
      * @return
      */
     @GetMapping("/getCustomerTransactionDetails/{id}")
-    public ResponseEntity<List<String>> returnTransferHistory(@PathVariable Long id) {
+    public ResponseEntity<List<String>> returnTransferHistory(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         List<String> res = new ArrayList<String>();
         try {
 
             if (checkValidCustomer(id)) {
+                controllerMetrics.count(Failure.BAD_CUSTOMER_ID);
                 res.add(BAD_CUSTOMER_ID);
                 return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
             }
 
-            List<String> transactionDetails = new ArrayList<>();
+            HttpHeaders headers = new HttpHeaders();
+            String eTag = customerETag(id);
+            if (eTag != null) {
+                headers.setETag(eTag);
+                if (matches(ifNoneMatch, eTag)) {
+                    return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+                }
+            }
 
+            journalProjector.awaitProjected();
             List<Transaction> transactions = transactionRepository.findAllByCustomerId(id);
-            for (Transaction transaction : transactions) {
-                transactionDetails.add(transaction.getTransactionDetails());
+
+            if (transactions.isEmpty()) {
+                controllerMetrics.count(Failure.NO_TRANSACTIONS_FOUND);
+                res.add(NO_TRANSACTIONS_FOUND);
+                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
+            }
+
+            return new ResponseEntity<>(transactionDetails.render(transactions), headers, HttpStatus.OK);
+        } catch (Exception e) {
+            controllerMetrics.count(Failure.EXCEPTION);
+            res.add(e.getMessage());
+            return new ResponseEntity<>(res, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Fetch one page of the transaction history for a given customer id, oldest
+     * first. Pages are addressed by the id of the last transaction already seen
+     * rather than by offset, so every page costs the same no matter how deep it
+     * is. When more transactions follow, the response carries a Next-After-Id
+     * header to pass as afterId for the next page.
+     * 
+     * @param id
+     * @param afterId
+     * @param limit
+     * @return
+     */
+    @GetMapping("/getCustomerTransactionHistory/{id}")
+    public ResponseEntity<List<String>> returnTransferHistoryPage(@PathVariable Long id,
+            @RequestParam(defaultValue = "0") long afterId, @RequestParam(defaultValue = "50") int limit) {
+        List<String> res = new ArrayList<String>();
+        try {
+            if (checkValidCustomer(id)) {
+                controllerMetrics.count(Failure.BAD_CUSTOMER_ID);
+                res.add(BAD_CUSTOMER_ID);
+                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
             }
 
-            if (transactionDetails.isEmpty()) {
+            if (limit < 1 || limit > TransactionHistoryService.MAX_PAGE_SIZE) {
+                controllerMetrics.count(Failure.BAD_PAGE_LIMIT);
+                res.add(BAD_PAGE_LIMIT);
+                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
+            }
+
+            journalProjector.awaitProjected();
+            TransactionHistoryPage page = transactionHistoryService.page(id, afterId, limit);
+            res.addAll(transactionDetails.render(page.getTransactions()));
+
+            if (res.isEmpty() && afterId == 0) {
+                controllerMetrics.count(Failure.NO_TRANSACTIONS_FOUND);
                 res.add(NO_TRANSACTIONS_FOUND);
                 return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
             }
 
-            return new ResponseEntity<>(transactionDetails, HttpStatus.OK);
+            HttpHeaders headers = new HttpHeaders();
+            if (page.getNextAfterId() != null) {
+                headers.set(NEXT_AFTER_ID_HEADER, page.getNextAfterId().toString());
+            }
+            return new ResponseEntity<>(res, headers, HttpStatus.OK);
         } catch (Exception e) {
+            controllerMetrics.count(Failure.EXCEPTION);
             res.add(e.getMessage());
             return new ResponseEntity<>(res, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Stream the complete transaction history of a customer as NDJSON or CSV,
+     * oldest first. The result can be narrowed to an inclusive id range and to a
+     * creation time range of [from, to). Rows are written to the response as they
+     * are read, so the size of the history does not affect memory use. If the
+     * client disconnects, the query is cancelled.
+     * 
+     * @param id
+     * @param format ndjson or csv
+     * @param fromId
+     * @param toId
+     * @param from   ISO-8601 instant
+     * @param to     ISO-8601 instant
+     * @return
+     */
+    @GetMapping("/exportCustomerTransactions/{id}")
+    public ResponseEntity<StreamingResponseBody> exportTransferHistory(@PathVariable Long id,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "0") long fromId,
+            @RequestParam(defaultValue = "" + Long.MAX_VALUE) long toId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to) {
+        try {
+            if (checkValidCustomer(id)) {
+                controllerMetrics.count(Failure.BAD_CUSTOMER_ID);
+                return errorStream(BAD_CUSTOMER_ID, HttpStatus.BAD_REQUEST);
+            }
+
+            ExportFormat exportFormat = ExportFormat.fromName(format);
+            if (exportFormat == null) {
+                controllerMetrics.count(Failure.BAD_EXPORT_FORMAT);
+                return errorStream(BAD_EXPORT_FORMAT, HttpStatus.BAD_REQUEST);
+            }
+
+            Instant start = from != null ? from : Instant.EPOCH;
+            Instant end = to != null ? to : Instant.parse("9999-12-31T23:59:59Z");
+
+            journalProjector.awaitProjected();
+            StreamingResponseBody body = out -> transactionExportService.export(id, exportFormat, fromId, toId,
+                    start, end, out);
+            return ResponseEntity.ok().contentType(exportFormat.getMediaType()).body(body);
+        } catch (Exception e) {
+            controllerMetrics.count(Failure.EXCEPTION);
+            return errorStream(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Same JSON list body the other endpoints return, for the streaming endpoint.
+    private ResponseEntity<StreamingResponseBody> errorStream(String message, HttpStatus status) {
+        List<String> res = new ArrayList<String>();
+        res.add(message);
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, res));
+    }
+
     /**
      * Get all balances for a customer. If no valid customer, return an error that
-     * customer doesn't exist. Else, return list.
+     * customer doesn't exist. Else, return list. Balances come from the in-memory
+     * BalanceReadModel, which only hits the database for customers it does not
+     * hold yet. The list carries the customer's version as its ETag, see
+     * customerETag, and an If-None-Match with that ETag is answered with 304
+     * without reading any balance.
      * 
      * @param id
+     * @param ifNoneMatch
      * @return
      */
     @GetMapping("/getCustomerBalances/{id}")
-    public ResponseEntity<List<String>> getCustomerBalancesById(@PathVariable Long id) {
+    public ResponseEntity<List<String>> getCustomerBalancesById(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         List<String> res = new ArrayList<String>();
         try {
             if (checkValidCustomer(id)) {
+                controllerMetrics.count(Failure.BAD_CUSTOMER_ID);
                 res.add(BAD_CUSTOMER_ID);
                 return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
             }
 
-            List<BigDecimal> balanceList = bankAccountRepository.getBalances(id);
-            for (BigDecimal balance : balanceList) {
+            HttpHeaders headers = new HttpHeaders();
+            String eTag = customerETag(id);
+            if (eTag != null) {
+                headers.setETag(eTag);
+                if (matches(ifNoneMatch, eTag)) {
+                    return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+                }
+            }
+
+            CustomerBalanceSummary summary = balanceReadModel.get(id);
+            for (Money balance : summary.getBalances().values()) {
                 res.add(balance.toString());
             }
 
-            if (balanceList.isEmpty()) {
+            if (summary.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
 
-            return new ResponseEntity<>(res, HttpStatus.OK);
+            return new ResponseEntity<>(res, headers, HttpStatus.OK);
         } catch (Exception e) {
+            controllerMetrics.count(Failure.EXCEPTION);
             res.add(e.getMessage());
             return new ResponseEntity<>(res, HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -131,123 +350,254 @@ class BankController {
      * exist, return an error. If the deposit is less than zero, return an error
      * that
      * the deposit must be equal to or greater than zero.
+     * A request sent again with the same Idempotency-Key gets the first
+     * response and creates no second account, see IdempotencyStore.
      */
     @PostMapping("/createBankAccount")
-    public ResponseEntity<List<String>> createNewBankAccountForCustomer(@RequestBody CreateAccountRequest request) {
+    public ResponseEntity<List<String>> createNewBankAccountForCustomer(@RequestBody CreateAccountRequest request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null && idempotencyKey.length() > IdempotencyStore.MAX_KEY_LENGTH) {
+            controllerMetrics.count(Failure.BAD_IDEMPOTENCY_KEY);
+            return new ResponseEntity<>(List.of(BAD_IDEMPOTENCY_KEY), HttpStatus.BAD_REQUEST);
+        }
+        return idempotencyStore.execute("createBankAccount", idempotencyKey, request, request.getCustomer_id(),
+                () -> createBankAccount(request));
+    }
+
+    private ResponseEntity<List<String>> createBankAccount(CreateAccountRequest request) {
         List<String> res = new ArrayList<String>();
         try {
             if (checkValidCustomer(request.getCustomer_id())) {
+                controllerMetrics.count(Failure.BAD_CUSTOMER_ID);
                 res.add(BAD_CUSTOMER_ID);
                 return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
             }
 
-            if (request.getInitialDeposit().compareTo(BigDecimal.ZERO) < 0) {
+            if (request.getInitialDeposit().isNegative()) {
+                controllerMetrics.count(Failure.BAD_INITIAL_DEPOSIT);
                 res.add(BAD_INITIAL_DEPOSIT);
                 return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
             }
 
-            BankAccount account = new BankAccount(request.getCustomer_id(), request.getInitialDeposit());
-
-            bankAccountRepository.save(account);
+            bankAccountService.createAccount(request);
 
             res.add(ACCOUNT_CREATED);
             return new ResponseEntity<>(res, HttpStatus.OK);
         } catch (Exception e) {
+            controllerMetrics.count(Failure.EXCEPTION);
             res.add(e.getMessage());
             return new ResponseEntity<>(res, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Open many accounts at once, for migrating a partner bank. The body is a
+     * JSON array of the requests createBankAccount takes, or text/csv rows of
+     * customer_id,initialDeposit. It is read and answered as a stream, one
+     * NDJSON line per row with its OnboardingStatus and the new account's id,
+     * see AccountOnboardingService.
+     * 
+     * @param contentType
+     * @param body
+     * @return
+     */
+    @PostMapping("/createBankAccounts")
+    public ResponseEntity<StreamingResponseBody> createBankAccounts(
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            InputStream body) {
+        try {
+            MediaType mediaType = contentType == null ? MediaType.APPLICATION_JSON
+                    : MediaType.parseMediaType(contentType);
+            boolean csv = mediaType.isCompatibleWith(ExportFormat.CSV.getMediaType());
+            if (!csv && !mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                controllerMetrics.count(Failure.BAD_ONBOARDING_FORMAT);
+                return errorStream(BAD_ONBOARDING_FORMAT, HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+            }
+
+            StreamingResponseBody results = out -> accountOnboardingService.onboard(body, csv, out);
+            return ResponseEntity.ok().contentType(ExportFormat.NDJSON.getMediaType()).body(results);
+        } catch (Exception e) {
+            controllerMetrics.count(Failure.EXCEPTION);
+            return errorStream(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     /*
      * Transfer amounts between any two accounts, including those owned by
      * different customers.
-     * NOTE: transaction details is a string generated in the function.
-     * "FROM {sender_name} {amount}TO {reciever_name}"
+     * NOTE: transaction details is a string rendered by TransactionDetails when
+     * the history is read, "FROM {sender_name} {amount} TO {reciever_name}"
+     * Validation, the balance check, debit, credit and transaction record are
+     * done by the TransferService in a single database transaction, while holding
+     * the locks of both accounts so transfers touching them run one at a time.
+     * A hot receiving account is not locked, see HotAccounts.
+     * With bank.partitions.enabled the transfer is handed to the
+     * PartitionedTransferExecutor instead, which needs no locks.
+     * A transfer sent again with the same Idempotency-Key is not applied twice,
+     * it gets the response of the first one, see IdempotencyStore.
+     * With bank.admission.enabled a sending customer over its rate, or a
+     * transfer arriving while too many run, gets a 429 before the
+     * idempotency_keys table or any account is read, see AdmissionControl. A
+     * retry answered with a response held in memory is never turned away.
      * 
      */
     @PutMapping("/transfer")
     public ResponseEntity<List<String>> transferBetweenAccountsAndRecordTransaction(
-            @RequestBody TransactionRequest transactionRequest) {
-        List<String> res = new ArrayList<String>();
-        try {
-            Optional<BankAccount> optionalSenderBankAccount = bankAccountRepository
-                    .findById(transactionRequest.getSender_account_id());
-
-            Optional<BankAccount> optionalReceiverBankAccount = bankAccountRepository
-                    .findById(transactionRequest.getReceiver_account_id());
-
-            if (checkValidCustomer(transactionRequest.getReceiving_customer_id())) {
-                res.add(BAD_RECEIVER_ID);
-                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
-            }
-            if (checkValidCustomer(transactionRequest.getSending_customer_id())) {
-                res.add(BAD_SENDER_ID);
-                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
-            }
-
-            Customer receivingCustomer = customerRepository.findById(transactionRequest.getReceiving_customer_id())
-                    .orElse(null);
-            Customer sendingCustomer = customerRepository.findById(transactionRequest.getSending_customer_id())
-                    .orElse(null);
-
-            if (optionalSenderBankAccount.isEmpty()) {
-                res.add(BAD_SENDER_ACCOUNT_ID);
-                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
-            }
+            @RequestBody TransactionRequest transactionRequest,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null && idempotencyKey.length() > IdempotencyStore.MAX_KEY_LENGTH) {
+            controllerMetrics.count(Failure.BAD_IDEMPOTENCY_KEY);
+            return new ResponseEntity<>(List.of(BAD_IDEMPOTENCY_KEY), HttpStatus.BAD_REQUEST);
+        }
+        return idempotencyStore.execute("transfer", idempotencyKey, transactionRequest,
+                transactionRequest.getSending_customer_id(),
+                transferAdmission(transactionRequest.getSending_customer_id()), () -> transfer(transactionRequest));
+    }
 
-            if (optionalReceiverBankAccount.isEmpty()) {
-                res.add(BAD_RECEIVER_ACCOUNT_ID);
-                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
+    // Only asked once the IdempotencyStore has no response in memory to replay.
+    private IdempotencyStore.Admission transferAdmission(Long sendingCustomerId) {
+        return new IdempotencyStore.Admission() {
+            @Override
+            public ResponseEntity<List<String>> admit() {
+                long retryAfter = admissionControl.admit(Collections.singletonMap(sendingCustomerId, 1));
+                return retryAfter == AdmissionControl.ADMITTED ? null : tooManyTransfers(retryAfter);
             }
 
-            BankAccount senderBankAccount = optionalSenderBankAccount.get();
-            BankAccount receiverBankAccount = optionalReceiverBankAccount.get();
-
-            if (senderBankAccount.getBalance().compareTo(transactionRequest.getAmount()) < 0) {
-                res.add(INSUFFICIENT_FUNDS);
-                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
+            @Override
+            public void done() {
+                admissionControl.done();
             }
+        };
+    }
 
-            if (senderBankAccount.getCustomer_id() != sendingCustomer.getId()) {
-                res.add(BAD_OWNER_SENDER);
-                return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
+    private ResponseEntity<List<String>> transfer(TransactionRequest transactionRequest) {
+        List<String> res = new ArrayList<String>();
+        try {
+            TransferStatus status;
+            if (partitionedTransferExecutor.isEnabled()) {
+                status = partitionedTransferExecutor.transfer(transactionRequest);
+            } else {
+                // Credits to a hot account go to its shards, which need no account lock.
+                List<Long> lockedAccounts = hotAccounts.isHot(transactionRequest.getReceiver_account_id())
+                        ? Arrays.asList(transactionRequest.getSender_account_id())
+                        : Arrays.asList(transactionRequest.getSender_account_id(),
+                                transactionRequest.getReceiver_account_id());
+                status = accountLockManager.withAccountLocks(lockedAccounts,
+                        () -> transferService.transfer(transactionRequest));
             }
 
-            if (receiverBankAccount.getCustomer_id() != receivingCustomer.getId()) {
-                res.add(BAD_OWNER_RECEIVER);
+            if (status != TransferStatus.COMPLETED) {
+                res.add(transferMessage(status));
                 return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
             }
-            senderBankAccount.setBalance(senderBankAccount.getBalance().subtract(transactionRequest.getAmount()));
-            receiverBankAccount.setBalance(receiverBankAccount.getBalance().add(transactionRequest.getAmount()));
-
-            bankAccountRepository.save(senderBankAccount);
-            bankAccountRepository.save(receiverBankAccount);
 
-            Transaction transaction = new Transaction();
-            transaction.setSender_account_id(transactionRequest.getSender_account_id());
-            transaction.setReceiver_account_id(transactionRequest.getReceiver_account_id());
-            transaction.setAmount(transactionRequest.getAmount());
+            res.add(TRANSFER_COMPLETED);
+            return ResponseEntity.ok(res);
+        } catch (Exception e) {
+            controllerMetrics.count(Failure.EXCEPTION);
+            res.add(e.getMessage());
+            return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
+        }
 
-            String receiverName = receivingCustomer.getName();
-            String senderName = sendingCustomer.getName();
+    }
 
-            transaction.setTransactionDetails(
-                    "FROM " + senderName + " " + transactionRequest.getAmount() + " TO " + receiverName);
-            transactionRepository.save(transaction);
+    /*
+     * Apply a list of transfers in one go, in the order given. Each item is
+     * validated and checked for funds the same way as a single transfer, and
+     * sees the balances left by the items before it. The response holds one
+     * message per item, in request order. Each item counts against its sending
+     * customer's rate, and the whole batch is refused with a 429 if any of them
+     * is over it, see AdmissionControl.
+     */
+    @PostMapping("/transfers/batch")
+    public ResponseEntity<List<String>> transferBatchBetweenAccountsAndRecordTransactions(
+            @RequestBody List<TransactionRequest> transactionRequests) {
+        Map<Long, Integer> transfers = new LinkedHashMap<>();
+        for (TransactionRequest transactionRequest : transactionRequests) {
+            transfers.merge(transactionRequest.getSending_customer_id(), 1, Integer::sum);
+        }
+        long retryAfter = admissionControl.admit(transfers);
+        if (retryAfter != AdmissionControl.ADMITTED) {
+            return tooManyTransfers(retryAfter);
+        }
+        List<String> res = new ArrayList<String>();
+        try {
+            List<TransferStatus> statuses = partitionedTransferExecutor.isEnabled()
+                    ? partitionedTransferExecutor.transferBatch(transactionRequests)
+                    : transferService.transferBatch(transactionRequests);
+            for (TransferStatus status : statuses) {
+                res.add(transferMessage(status));
+            }
 
-            res.add(TRANSFER_COMPLETED);
             return ResponseEntity.ok(res);
         } catch (Exception e) {
+            controllerMetrics.count(Failure.EXCEPTION);
             res.add(e.getMessage());
             return new ResponseEntity<>(res, HttpStatus.BAD_REQUEST);
+        } finally {
+            admissionControl.done();
         }
+    }
 
+    private ResponseEntity<List<String>> tooManyTransfers(long retryAfterSeconds) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return new ResponseEntity<>(List.of(TOO_MANY_TRANSFERS), headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    String transferMessage(TransferStatus status) {
+        return switch (status) {
+            case COMPLETED -> TRANSFER_COMPLETED;
+            case BAD_SENDER_ID -> BAD_SENDER_ID;
+            case BAD_RECEIVER_ID -> BAD_RECEIVER_ID;
+            case BAD_SENDER_ACCOUNT_ID -> BAD_SENDER_ACCOUNT_ID;
+            case BAD_RECEIVER_ACCOUNT_ID -> BAD_RECEIVER_ACCOUNT_ID;
+            case BAD_OWNER_SENDER -> BAD_OWNER_SENDER;
+            case BAD_OWNER_RECEIVER -> BAD_OWNER_RECEIVER;
+            case BAD_AMOUNT -> BAD_AMOUNT;
+            case INSUFFICIENT_FUNDS -> INSUFFICIENT_FUNDS;
+            case VALID -> throw new IllegalStateException("Transfer was validated but not applied");
+        };
     }
 
     public boolean checkValidCustomer(Long id) {
-        Optional<Customer> targetCustomer = customerRepository.findById(id);
+        return !customerCache.exists(id);
+    }
+
+    /**
+     * ETag naming everything written to the customer's accounts so far, taken
+     * from BalanceReadModel.version before anything is read, so the response it
+     * goes out with is at least as new as the tag. The CustomerCache version
+     * covers the names a history is rendered with, which any customer the
+     * customer transacted with may change. Null while a write for the customer
+     * is still in flight, those responses go out untagged.
+     * 
+     * @param id
+     * @return
+     */
+    private String customerETag(Long id) {
+        long names = customerCache.version();
+        long version = balanceReadModel.version(id);
+        return version < 0 ? null
+                : "\"" + balanceReadModel.getInstanceId() + "." + version + "." + names + "\"";
+    }
 
-        return targetCustomer.isEmpty();
+    // If-None-Match holds a comma separated list of tags, weak ones compare equal
+    // too, or * for whatever the customer's current tag is.
+    private boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.demo;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Meters for the BankController. bank.requests.failed counts the requests it
+ * turns away itself, by Failure, next to the transfer outcomes counted in
+ * bank.transfers. Exceptions caught by an endpoint count as EXCEPTION.
+ */
+@Component
+class ControllerMetrics {
+
+    enum Failure {
+        BAD_CUSTOMER_ID,
+        BAD_INITIAL_DEPOSIT,
+        NO_TRANSACTIONS_FOUND,
+        BAD_PAGE_LIMIT,
+        BAD_EXPORT_FORMAT,
+        BAD_IDEMPOTENCY_KEY,
+        BAD_ONBOARDING_FORMAT,
+        EXCEPTION,
+    }
+
+    private final Map<Failure, Counter> failures = new EnumMap<>(Failure.class);
+
+    ControllerMetrics(MeterRegistry registry) {
+        for (Failure failure : Failure.values()) {
+            failures.put(failure, Counter.builder("bank.requests.failed")
+                    .description("Requests turned away by the controller, by failure")
+                    .tag("failure", failure.name())
+                    .register(registry));
+        }
+    }
+
+    void count(Failure failure) {
+        failures.get(failure).increment();
+    }
+
+}
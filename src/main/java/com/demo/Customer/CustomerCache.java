@@ -0,0 +1,192 @@
+package com.demo.Customer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Bounded cache of customer names in front of the CustomerRepository. A customer
+ * exists when it has a cached or loadable name. Entries are evicted by size and
+ * after a fixed time, and dropped explicitly whenever a customer is written.
+ * Unknown ids are never cached, so a customer created by another writer shows up
+ * on the next lookup.
+ * 
+ * Missing names are read outside of the cache's map lock, so a virtual thread
+ * waiting on the database does not pin its carrier, and several at once with one
+ * query. Each such read holds a token per id until it is done; invalidating the
+ * id drops the token, and a read whose token is gone returns its name without
+ * caching it, since it may be the old one. Invalidating one customer does not
+ * affect reads of the others.
+ * 
+ * Every invalidation also moves the version on, which goes into the ETags of
+ * responses rendered from names, so a rename is never answered with 304.
+ */
+@Component
+public class CustomerCache implements MeterBinder {
+
+    private final Cache<Long, String> names;
+
+    private final CustomerNameLoader loader;
+
+    // One token per id whose name is being read outside of the cache.
+    private final Map<Long, Object> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    public CustomerCache(CustomerRepository customerRepository,
+            @Value("${bank.customer-cache.max-size:100000}") long maxSize,
+            @Value("${bank.customer-cache.ttl:10m}") Duration ttl) {
+        this.loader = new CustomerNameLoader(customerRepository);
+        this.names = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public boolean exists(Long id) {
+        return getName(id) != null;
+    }
+
+    /**
+     * @param id
+     * @return the customer's name, or null if there is no such customer
+     */
+    public String getName(Long id) {
+        if (id == null) {
+            return null;
+        }
+        String name = names.getIfPresent(id);
+        if (name != null) {
+            return name;
+        }
+
+        Object token = new Object();
+        loading.put(id, token);
+        String loaded;
+        try {
+            loaded = loader.load(id);
+        } catch (RuntimeException e) {
+            loading.remove(id, token);
+            throw e;
+        }
+        if (loaded == null) {
+            loading.remove(id, token);
+            return null;
+        }
+        cache(id, token, loaded);
+        return loaded;
+    }
+
+    // The token is checked under the entry's lock, which invalidate also takes.
+    private void cache(Long id, Object token, String loaded) {
+        names.asMap().compute(id, (key, cached) -> loading.remove(id, token) && cached == null ? loaded : cached);
+    }
+
+    /**
+     * Look up several customers at once. Ids missing from the cache are loaded
+     * with a single query. Customers that do not exist are left out of the map.
+     * 
+     * @param ids
+     * @return
+     */
+    public Map<Long, String> getNames(Collection<Long> ids) {
+        Map<Long, String> found = new HashMap<>();
+        Map<Long, Object> tokens = new HashMap<>();
+        for (Long id : ids) {
+            if (id == null || found.containsKey(id) || tokens.containsKey(id)) {
+                continue;
+            }
+            String name = names.getIfPresent(id);
+            if (name != null) {
+                found.put(id, name);
+            } else {
+                Object token = new Object();
+                loading.put(id, token);
+                tokens.put(id, token);
+            }
+        }
+        if (tokens.isEmpty()) {
+            return found;
+        }
+
+        Map<Long, String> loaded;
+        try {
+            loaded = loader.loadAll(tokens.keySet());
+        } catch (RuntimeException e) {
+            tokens.forEach(loading::remove);
+            throw e;
+        }
+        tokens.forEach((id, token) -> {
+            String name = loaded.get(id);
+            if (name == null) {
+                loading.remove(id, token);
+            } else {
+                cache(id, token, name);
+                found.put(id, name);
+            }
+        });
+        return found;
+    }
+
+    // The old name is gone before the version moves on, so a response tagged
+    // with the new version never renders it.
+    public void invalidate(Long id) {
+        loading.remove(id);
+        names.invalidate(id);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Number of customer writes seen so far, taken before names are read. The
+     * same version later on means no customer was renamed or deleted in between.
+     * Starts over with each instance.
+     * 
+     * @return
+     */
+    public long version() {
+        return version.get();
+    }
+
+    public long hitCount() {
+        return names.stats().hitCount();
+    }
+
+    public long missCount() {
+        return names.stats().missCount();
+    }
+
+    public long evictionCount() {
+        return names.stats().evictionCount();
+    }
+
+    public long size() {
+        return names.estimatedSize();
+    }
+
+    // Publishes size, hits, misses and evictions as the "customers" cache.
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(names, "customers", Tags.empty()).bindTo(registry);
+    }
+
+    // Runs pending evictions now rather than on a later cache access.
+    public void cleanUp() {
+        names.cleanUp();
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.demo.Customer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads customer names for the CustomerCache. Bulk loads are a single
+ * findAllById.
+ */
+class CustomerNameLoader {
+
+    private final CustomerRepository customerRepository;
+
+    CustomerNameLoader(CustomerRepository customerRepository) {
+        this.customerRepository = customerRepository;
+    }
+
+    String load(Long id) {
+        return customerRepository.findById(id).map(Customer::getName).orElse(null);
+    }
+
+    Map<Long, String> loadAll(Collection<Long> ids) {
+        Map<Long, String> loaded = new HashMap<>();
+        for (Customer customer : customerRepository.findAllById(List.copyOf(ids))) {
+            loaded.put(customer.getId(), customer.getName());
+        }
+        return loaded;
+    }
+
+}
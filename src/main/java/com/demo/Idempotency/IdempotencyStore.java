@@ -0,0 +1,477 @@
+package com.demo.Idempotency;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Responses to requests sent with an Idempotency-Key header, so a client that
+ * retries a request it got no answer to gets the first answer again instead of
+ * running the request twice. A request sent again with a key already used for
+ * a different body or sending customer is refused with 422 instead of being
+ * answered with the response to the other request. Recent responses are held in a cache bounded by
+ * size and time, so a replay touches no repository. Every response is also
+ * written to the idempotency_keys table and kept there for the retention
+ * period, which answers retries the cache has already dropped. A single writer
+ * thread inserts whatever responses queued up while it wrote the last ones in
+ * one transaction, so keyed requests do not each pay for a commit.
+ *
+ * A retry that arrives while the first request is still running waits for it
+ * and gets its response. The wait holds no monitor, so a virtual thread does
+ * not pin its carrier. Server errors and 429 Too Many Requests are handed to
+ * those waiters but not kept, so a later retry runs the request again.
+ *
+ * The response is written after the request ran, not in its transaction. A
+ * crash before it is written, or a retry sent to another instance while the
+ * first is still running, can still run a request twice.
+ */
+@Component
+public class IdempotencyStore implements MeterBinder, SmartLifecycle {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    // Set on every response that was not produced by running the request.
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    // Leaves room for the endpoint prefix in the 255 character column.
+    public static final int MAX_KEY_LENGTH = 200;
+
+    public static final String KEY_REUSED = "Idempotency key was already used for a different request";
+
+    static final long WRITE_TIMEOUT_SECONDS = 30;
+
+    private static final Duration PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    static final int MAX_BATCH = 500;
+
+    // Stopped after the web server, so responses given before shutdown are written.
+    static final int PHASE = 0;
+
+    private static final TypeReference<List<String>> BODY = new TypeReference<>() {
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    private final StoredResponseRepository storedResponseRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration retention;
+
+    private final Cache<String, Response> responses;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<StoredResponse> unwritten = new LinkedBlockingQueue<>();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchWritten = lock.newCondition();
+
+    private long nextPurge;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public IdempotencyStore(StoredResponseRepository storedResponseRepository, ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${bank.idempotency.max-size:100000}") long maxSize,
+            @Value("${bank.idempotency.ttl:10m}") Duration ttl,
+            @Value("${bank.idempotency.retention:24h}") Duration retention) {
+        this.storedResponseRepository = storedResponseRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retention = retention;
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    // Status and body of a response, as given to the first request with a key,
+    // and what that request was.
+    private record Response(String requestHash, Long customerId, int status, List<String> body) {
+        boolean answers(String requestHash, Long customerId) {
+            return this.requestHash.equals(requestHash) && Objects.equals(this.customerId, customerId);
+        }
+    }
+
+    /**
+     * Decides whether a request may run, once there is no response to replay
+     * for it.
+     */
+    public interface Admission {
+
+        Admission ALWAYS = new Admission() {
+            @Override
+            public ResponseEntity<List<String>> admit() {
+                return null;
+            }
+
+            @Override
+            public void done() {
+            }
+        };
+
+        /**
+         * @return null if the request is admitted, otherwise the response that
+         *         turns it away, which is not kept for its key
+         */
+        ResponseEntity<List<String>> admit();
+
+        // Called once for every admitted request, after it ran or was replayed.
+        void done();
+    }
+
+    /**
+     * Run a request at most once per key and endpoint.
+     *
+     * @param endpoint   name of the endpoint, keys are only compared within one
+     * @param key        the request's Idempotency-Key, the request simply runs
+     *                   if it is null
+     * @param body       the request's body, an earlier request with the same
+     *                   key must have had an equal one
+     * @param customerId the customer sending the request, an earlier request
+     *                   with the same key must have come from the same one
+     * @param request    runs the request
+     * @return the request's response, the response of an earlier request with
+     *         the same key, or 422 if that request was a different one
+     */
+    public ResponseEntity<List<String>> execute(String endpoint, String key, Object body, Long customerId,
+            Supplier<ResponseEntity<List<String>>> request) {
+        return execute(endpoint, key, body, customerId, Admission.ALWAYS, request);
+    }
+
+    /**
+     * Run a request at most once per key and endpoint, if admitted. A response
+     * held in memory, or one still being produced, is replayed without asking
+     * for admission. Only an admitted request looks for a response in the
+     * idempotency_keys table, so a request that is turned away costs no query.
+     *
+     * @param endpoint   name of the endpoint, keys are only compared within one
+     * @param key        the request's Idempotency-Key, the request is only
+     *                   admitted and run if it is null
+     * @param body       the request's body, an earlier request with the same
+     *                   key must have had an equal one
+     * @param customerId the customer sending the request, an earlier request
+     *                   with the same key must have come from the same one
+     * @param admission  asked before the request's key is looked up in the
+     *                   idempotency_keys table
+     * @param request    runs the request
+     * @return the request's response, the response of an earlier request with
+     *         the same key, 422 if that request was a different one, or the
+     *         response of the admission that turned it away
+     */
+    public ResponseEntity<List<String>> execute(String endpoint, String key, Object body, Long customerId,
+            Admission admission, Supplier<ResponseEntity<List<String>>> request) {
+        if (key == null) {
+            ResponseEntity<List<String>> refused = admission.admit();
+            if (refused != null) {
+                return refused;
+            }
+            try {
+                return request.get();
+            } finally {
+                admission.done();
+            }
+        }
+        String id = endpoint + ":" + key;
+        String requestHash = hash(body);
+        Response response = responses.getIfPresent(id);
+        if (response != null) {
+            return replay(response, requestHash, customerId, replayed);
+        }
+
+        CompletableFuture<Response> own = new CompletableFuture<>();
+        CompletableFuture<Response> running = inFlight.putIfAbsent(id, own);
+        if (running != null) {
+            return replay(join(running), requestHash, customerId, joined);
+        }
+        try {
+            // The first request may have finished between the lookup and taking the key.
+            response = responses.getIfPresent(id);
+            if (response != null) {
+                own.complete(response);
+                return replay(response, requestHash, customerId, replayed);
+            }
+
+            ResponseEntity<List<String>> refused = admission.admit();
+            if (refused != null) {
+                // handed to the waiters, but not kept
+                own.complete(new Response(requestHash, customerId, refused.getStatusCode().value(),
+                        refused.getBody()));
+                return refused;
+            }
+            try {
+                return findOrRun(id, requestHash, customerId, own, request);
+            } finally {
+                admission.done();
+            }
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, own);
+        }
+    }
+
+    // Replays the response stored for the key, or runs the request and keeps its
+    // response. Either way completes own.
+    private ResponseEntity<List<String>> findOrRun(String id, String requestHash, Long customerId,
+            CompletableFuture<Response> own, Supplier<ResponseEntity<List<String>>> request) {
+        Response response = storedResponseRepository.findStoredSince(id, Instant.now().minus(retention))
+                .map(stored -> new Response(stored.getRequestHash(), stored.getCustomerId(), stored.getStatus(),
+                        readBody(stored.getBody())))
+                .orElse(null);
+        if (response != null) {
+            responses.put(id, response);
+            own.complete(response);
+            return replay(response, requestHash, customerId, replayed);
+        }
+
+        executed.increment();
+        ResponseEntity<List<String>> result = request.get();
+        response = new Response(requestHash, customerId, result.getStatusCode().value(), result.getBody());
+        if (!result.getStatusCode().is5xxServerError()
+                && result.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+            responses.put(id, response);
+            store(id, response);
+        }
+        own.complete(response);
+        return result;
+    }
+
+    // The request has already run, so a response that cannot be written is
+    // logged rather than turned into an error response.
+    private void store(String id, Response response) {
+        try {
+            unwritten.add(new StoredResponse(id, response.status(), objectMapper.writeValueAsString(response.body()),
+                    response.requestHash(), response.customerId(), Instant.now()));
+            queued.incrementAndGet();
+        } catch (JsonProcessingException e) {
+            log.warn("Could not store the response for idempotency key {}", id, e);
+        }
+    }
+
+    private void writeLoop() {
+        List<StoredResponse> batch = new ArrayList<>();
+        while (running || !unwritten.isEmpty()) {
+            try {
+                StoredResponse first = unwritten.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            unwritten.drainTo(batch, MAX_BATCH - 1);
+            try {
+                write(batch);
+            } catch (RuntimeException e) {
+                // the responses are still in the cache, only retries after it drops them run again
+                log.warn("Could not store {} idempotent responses", batch.size(), e);
+            }
+            lock.lock();
+            try {
+                written.addAndGet(batch.size());
+                batchWritten.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(List<StoredResponse> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (StoredResponse stored : batch) {
+                    insert(stored);
+                }
+                purgeExpired();
+            });
+        } catch (DataAccessException e) {
+            // A key taken by another instance fails the whole batch, write the rest one by one.
+            for (StoredResponse stored : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(stored));
+                } catch (DataAccessException single) {
+                    log.warn("Could not store the response for idempotency key {}", stored.getKey(), single);
+                }
+            }
+        }
+    }
+
+    private void insert(StoredResponse stored) {
+        storedResponseRepository.insert(stored.getKey(), stored.getStatus(), stored.getBody(),
+                stored.getRequestHash(), stored.getCustomerId(), stored.getCreatedAt());
+    }
+
+    private void purgeExpired() {
+        Instant now = Instant.now();
+        if (now.toEpochMilli() >= nextPurge) {
+            nextPurge = now.plus(PURGE_INTERVAL).toEpochMilli();
+            storedResponseRepository.deleteCreatedBefore(now.minus(retention));
+        }
+    }
+
+    /**
+     * Wait until every response stored so far has been written to the
+     * idempotency_keys table, or failed to be, at most WRITE_TIMEOUT_SECONDS.
+     */
+    public void awaitWritten() {
+        long target = queued.get();
+        long nanos = TimeUnit.SECONDS.toNanos(WRITE_TIMEOUT_SECONDS);
+        lock.lock();
+        try {
+            while (written.get() < target) {
+                if (nanos <= 0) {
+                    throw new IllegalStateException("Idempotent responses were not written in time");
+                }
+                nanos = batchWritten.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // SHA-256 of the body's JSON, which is all a retry is compared by.
+    private String hash(Object body) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(body)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not hash the request body", e);
+        }
+    }
+
+    private List<String> readBody(String body) {
+        try {
+            return objectMapper.readValue(body, BODY);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored response is not a list of strings: " + body, e);
+        }
+    }
+
+    private ResponseEntity<List<String>> replay(Response response, String requestHash, Long customerId,
+            LongAdder outcome) {
+        if (!response.answers(requestHash, customerId)) {
+            rejected.increment();
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(List.of(KEY_REUSED));
+        }
+        outcome.increment();
+        return ResponseEntity.status(response.status()).header(REPLAYED_HEADER, "true").body(response.body());
+    }
+
+    private static Response join(CompletableFuture<Response> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Publishes size, hits and misses as the "idempotency-keys" cache, and every
+    // keyed request as bank.idempotency.requests, by whether it ran, was answered
+    // from an earlier response, waited for one still running, or was refused
+    // because its key belongs to a different request.
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(responses, "idempotency-keys", Tags.empty()).bindTo(registry);
+        counter(registry, executed, "executed");
+        counter(registry, replayed, "replayed");
+        counter(registry, joined, "joined");
+        counter(registry, rejected, "rejected");
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, "idempotency-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Returns once the queued responses are written.
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private static void counter(MeterRegistry registry, LongAdder count, String outcome) {
+        FunctionCounter.builder("bank.idempotency.requests", count, LongAdder::sum)
+                .description("Requests sent with an Idempotency-Key")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.demo.Idempotency;
+
+import java.time.Instant;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The response given to a request carrying an Idempotency-Key, kept so a retry
+ * of that request is answered with it instead of running again. The key is
+ * prefixed with the endpoint it was sent to. The body is the response's JSON,
+ * the request hash and customer tell the request it answered.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "idempotency_keys")
+public class StoredResponse {
+
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+
+    @Column(name = "status", nullable = false)
+    private int status;
+
+    @Column(name = "body", nullable = false, length = 4000)
+    private String body;
+
+    // SHA-256 of the request's body, in hex
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+}
@@ -0,0 +1,26 @@
+package com.demo.Idempotency;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface StoredResponseRepository extends JpaRepository<StoredResponse, String> {
+
+    @Query("SELECT r FROM StoredResponse r WHERE r.key = :key AND r.createdAt >= :since")
+    Optional<StoredResponse> findStoredSince(@Param("key") String key, @Param("since") Instant since);
+
+    // A plain insert. save would first select the row, since the key is assigned.
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys(idempotency_key, status, body, request_hash, customer_id, created_at) VALUES (:key, :status, :body, :requestHash, :customerId, :createdAt)", nativeQuery = true)
+    int insert(@Param("key") String key, @Param("status") int status, @Param("body") String body,
+            @Param("requestHash") String requestHash, @Param("customerId") Long customerId,
+            @Param("createdAt") Instant createdAt);
+
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE created_at < :before", nativeQuery = true)
+    int deleteCreatedBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,35 @@
+package com.demo.Transaction;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Formats the transaction export can be written in. Both are one line per
+ * transaction so they can be produced and consumed as a stream.
+ */
+public enum ExportFormat {
+    NDJSON(MediaType.parseMediaType("application/x-ndjson")),
+    CSV(MediaType.parseMediaType("text/csv"));
+
+    private final MediaType mediaType;
+
+    ExportFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param name
+     * @return the matching format ignoring case, or null if there is none
+     */
+    public static ExportFormat fromName(String name) {
+        for (ExportFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
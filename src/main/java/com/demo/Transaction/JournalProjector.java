@@ -0,0 +1,219 @@
+package com.demo.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.demo.Bank.BankAccountRepository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Inserts the Transaction rows for journaled transfers, in journal order, on a
+ * background thread. It only moves past a sequence once that transfer has
+ * committed or rolled back, and inserts up to BATCH_SIZE rows per database
+ * transaction. Each row carries its journal sequence, so after a restart the
+ * projector resumes after the highest one in the transactions table, and the
+ * journal drops the segments that lie before it.
+ *
+ * Readers of transactions call awaitProjected first, so a transfer that has
+ * been acknowledged is always visible in the history.
+ */
+@Component
+public class JournalProjector implements SmartLifecycle {
+
+    static final int BATCH_SIZE = 500;
+    static final long PROJECTION_TIMEOUT_SECONDS = 30;
+
+    private static final Logger log = LoggerFactory.getLogger(JournalProjector.class);
+
+    private final TransferJournal transferJournal;
+    private final TransactionRepository transactionRepository;
+    private final BankAccountRepository bankAccountRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile long projectedThrough;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition projected = lock.newCondition();
+
+    private volatile boolean running;
+    private Thread projector;
+
+    public JournalProjector(TransferJournal transferJournal, TransactionRepository transactionRepository,
+            BankAccountRepository bankAccountRepository, TransactionTemplate transactionTemplate,
+            MeterRegistry registry) {
+        this.transferJournal = transferJournal;
+        this.transactionRepository = transactionRepository;
+        this.bankAccountRepository = bankAccountRepository;
+        this.transactionTemplate = transactionTemplate;
+        Gauge.builder("bank.journal.projection.lag", this,
+                projector -> Math.max(0, transferJournal.lastCommitted() - projector.projectedThrough))
+                .description("Committed transfers whose Transaction row is not inserted yet")
+                .register(registry);
+    }
+
+    /**
+     * Wait until every transfer committed so far has its Transaction row. Returns
+     * straight away when the journal is disabled.
+     */
+    public void awaitProjected() {
+        if (!transferJournal.isEnabled()) {
+            return;
+        }
+        long target = transferJournal.lastCommitted();
+        long nanos = TimeUnit.SECONDS.toNanos(PROJECTION_TIMEOUT_SECONDS);
+        lock.lock();
+        try {
+            while (projectedThrough < target) {
+                if (nanos <= 0) {
+                    throw new IllegalStateException("Transaction history is behind the transfer journal");
+                }
+                nanos = projected.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Project whatever the journal holds past the last projected row. Records of
+     * transfers that were still in flight when the application stopped are
+     * projected only if the sender account shows the transfer committed.
+     */
+    private void recover() {
+        Long checkpoint = transactionRepository.findMaxJournalSequence();
+        projectedThrough = checkpoint == null ? 0 : checkpoint;
+
+        long last = transferJournal.lastReserved();
+        while (projectedThrough < last) {
+            long from = projectedThrough + 1;
+            long to = Math.min(last, projectedThrough + BATCH_SIZE);
+            List<Transaction> transactions = new ArrayList<>();
+            for (long sequence = from; sequence <= to; sequence++) {
+                JournalRecord record = transferJournal.read(sequence);
+                if (record != null && !record.voided() && committed(record)) {
+                    transactions.add(transaction(record));
+                }
+            }
+            save(transactions, to);
+        }
+    }
+
+    private boolean committed(JournalRecord record) {
+        Long sequence = bankAccountRepository.findJournalSequence(record.senderAccountId());
+        return sequence != null && sequence >= record.sequence();
+    }
+
+    private void projectLoop() {
+        while (running) {
+            try {
+                projectThrough(transferJournal.awaitResolvedBeyond(projectedThrough, 100, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Projecting the transfer journal failed, retrying", e);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void projectThrough(long through) {
+        while (projectedThrough < through) {
+            long to = Math.min(through, projectedThrough + BATCH_SIZE);
+            List<Transaction> transactions = new ArrayList<>();
+            for (long sequence = projectedThrough + 1; sequence <= to; sequence++) {
+                // An unwritten slot belongs to a transfer that failed before it was journaled.
+                JournalRecord record = transferJournal.read(sequence);
+                if (record != null && !record.voided()) {
+                    transactions.add(transaction(record));
+                }
+            }
+            save(transactions, to);
+        }
+    }
+
+    private void save(List<Transaction> transactions, long through) {
+        if (!transactions.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> transactionRepository.saveAll(transactions));
+        }
+        // The rows are committed, so the segments before this checkpoint are not needed again.
+        transferJournal.release(through);
+
+        lock.lock();
+        try {
+            projectedThrough = through;
+            projected.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Transaction transaction(JournalRecord record) {
+        Transaction transaction = new Transaction();
+        transaction.setSender_account_id(record.senderAccountId());
+        transaction.setReceiver_account_id(record.receiverAccountId());
+        transaction.setAmount(record.amount());
+        transaction.setCreatedAt(record.createdAt());
+        transaction.setSender_customer_id(record.sendingCustomerId());
+        transaction.setReceiver_customer_id(record.receivingCustomerId());
+        transaction.setJournalSequence(record.sequence());
+        return transaction;
+    }
+
+    @Override
+    public void start() {
+        if (!transferJournal.isEnabled()) {
+            return;
+        }
+        recover();
+
+        running = true;
+        projector = new Thread(this::projectLoop, "transfer-journal-projector");
+        projector.setDaemon(true);
+        projector.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            projector.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The web server has stopped by now, so nothing new is resolved after this.
+        projectThrough(transferJournal.resolvedThrough());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return TransferJournal.PHASE + 1;
+    }
+
+}
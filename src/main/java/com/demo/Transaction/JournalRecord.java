@@ -0,0 +1,26 @@
+package com.demo.Transaction;
+
+import java.time.Instant;
+
+import com.demo.Bank.Money;
+
+/**
+ * One fixed-size slot of the TransferJournal. A voided record belongs to a
+ * transfer whose database transaction rolled back after it was journaled, and
+ * is never projected.
+ */
+record JournalRecord(long sequence, boolean voided, Instant createdAt, long senderAccountId,
+        long receiverAccountId, long sendingCustomerId, long receivingCustomerId, Money amount) {
+
+    static JournalRecord of(long sequence, TransactionRequest transactionRequest) {
+        return new JournalRecord(sequence, false, Instant.now(), transactionRequest.getSender_account_id(),
+                transactionRequest.getReceiver_account_id(), transactionRequest.getSending_customer_id(),
+                transactionRequest.getReceiving_customer_id(), transactionRequest.getAmount());
+    }
+
+    JournalRecord asVoid() {
+        return new JournalRecord(sequence, true, createdAt, senderAccountId, receiverAccountId, sendingCustomerId,
+                receivingCustomerId, amount);
+    }
+
+}
@@ -0,0 +1,529 @@
+package com.demo.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.demo.Bank.AccountBalance;
+import com.demo.Bank.BalanceChange;
+import com.demo.Bank.BalanceReadModel;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.Money;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Optional way of applying transfers, enabled with
+ * bank.partitions.enabled=true, in which threads never compete for account
+ * rows. Every account id hashes to one of bank.partitions.count partitions
+ * (one per processor by default). A partition is a single thread with a queue,
+ * it keeps the balances of its accounts in memory and is the only writer of
+ * their rows. A balance is loaded, shards of a hot account included, the first
+ * time the partition needs it. Between batches a partition drops the balances
+ * it used least recently beyond bank.partitions.max-balances, which only ever
+ * hold what has committed by then, so they are simply loaded again.
+ *
+ * A transfer is validated on the calling thread and queued on the sender's
+ * partition, which reserves the amount from the in-memory balance. Whenever a
+ * partition has drained its queue, at most bank.partitions.max-batch messages
+ * at a time, it writes the summed balance changes of its accounts and the new
+ * Transaction rows in one database transaction. A receiver in the same
+ * partition is credited in that transaction. For a receiver in another
+ * partition a PendingCredit row is written instead, and once that has committed
+ * the credit is handed to the receiver's partition, which applies it and
+ * deletes the row in its own next batch. Pending credits left behind by a stop
+ * are applied on the next start.
+ *
+ * A stop first turns new transfers away and waits until every transfer already
+ * accepted has been answered, credits handed between partitions included, and
+ * only then stops the partitions.
+ *
+ * Credits only become spendable in memory once they have committed, so when a
+ * batch fails its reservations are simply given back. The caller waits until
+ * the receiver has been credited.
+ *
+ * Cannot be combined with the TransferJournal, which records transfers applied
+ * by the TransferService instead.
+ */
+@Component
+public class PartitionedTransferExecutor implements SmartLifecycle {
+
+    static final long TRANSFER_TIMEOUT_SECONDS = 30;
+
+    // Started before the web server takes requests, stopped after it.
+    static final int PHASE = 0;
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionedTransferExecutor.class);
+
+    private final boolean enabled;
+    private final int partitionCount;
+    private final int maxBatch;
+    private final int maxBalances;
+    private final BankAccountRepository bankAccountRepository;
+    private final TransactionRepository transactionRepository;
+    private final PendingCreditRepository pendingCreditRepository;
+    private final TransferValidator transferValidator;
+    private final TransferMetrics transferMetrics;
+    private final BalanceReadModel balanceReadModel;
+    private final TransactionTemplate transactionTemplate;
+    private final DistributionSummary batchSize;
+
+    private Partition[] partitions;
+    private volatile boolean running;
+    private volatile boolean accepting;
+
+    // Callers waiting for a transfer accepted by the partitions.
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public PartitionedTransferExecutor(@Value("${bank.partitions.enabled:false}") boolean enabled,
+            @Value("${bank.partitions.count:0}") int partitionCount,
+            @Value("${bank.partitions.max-batch:500}") int maxBatch,
+            @Value("${bank.partitions.max-balances:100000}") int maxBalances,
+            @Value("${bank.journal.enabled:false}") boolean journalEnabled,
+            BankAccountRepository bankAccountRepository, TransactionRepository transactionRepository,
+            PendingCreditRepository pendingCreditRepository, TransferValidator transferValidator,
+            TransferMetrics transferMetrics, BalanceReadModel balanceReadModel,
+            TransactionTemplate transactionTemplate, MeterRegistry registry) {
+        if (enabled && journalEnabled) {
+            throw new IllegalArgumentException("bank.partitions.enabled and bank.journal.enabled cannot both be set");
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Partition batches need room for at least one message");
+        }
+        this.enabled = enabled;
+        this.partitionCount = partitionCount > 0 ? partitionCount : Runtime.getRuntime().availableProcessors();
+        this.maxBatch = maxBatch;
+        this.maxBalances = maxBalances;
+        this.bankAccountRepository = bankAccountRepository;
+        this.transactionRepository = transactionRepository;
+        this.pendingCreditRepository = pendingCreditRepository;
+        this.transferValidator = transferValidator;
+        this.transferMetrics = transferMetrics;
+        this.balanceReadModel = balanceReadModel;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = DistributionSummary.builder("bank.partitions.batch.size")
+                .description("Messages written by one partition in one database transaction")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Validate a transfer, have its partitions apply it and wait for the result.
+     * Returns the first validation failure, INSUFFICIENT_FUNDS, or COMPLETED, as
+     * TransferService.transfer does.
+     *
+     * @param transactionRequest
+     * @return
+     */
+    public TransferStatus transfer(TransactionRequest transactionRequest) {
+        TransferParties parties = transferMetrics.validate
+                .record(() -> transferValidator.load(List.of(transactionRequest)));
+
+        TransferStatus status = transferValidator.validate(transactionRequest, parties);
+        if (status != TransferStatus.VALID) {
+            return transferMetrics.count(status);
+        }
+
+        // counted before checking, so a stop either waits for it or it is turned away
+        inFlight.incrementAndGet();
+        try {
+            if (!accepting) {
+                throw new IllegalStateException("Transfer partitions are not running");
+            }
+            CompletableFuture<TransferStatus> result = new CompletableFuture<>();
+            partitionOf(transactionRequest.getSender_account_id()).queue
+                    .add(new Reserve(transactionRequest, result));
+            return transferMetrics.count(await(result));
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Apply a list of transfers one after the other, each seeing the balances
+     * left by the ones before it, as TransferService.transferBatch does. Unlike
+     * there, every item commits on its own.
+     *
+     * @param transactionRequests
+     * @return
+     */
+    public List<TransferStatus> transferBatch(List<TransactionRequest> transactionRequests) {
+        List<TransferStatus> statuses = new ArrayList<>(transactionRequests.size());
+        for (TransactionRequest request : transactionRequests) {
+            statuses.add(transfer(request));
+        }
+        return statuses;
+    }
+
+    private static TransferStatus await(CompletableFuture<TransferStatus> result) {
+        try {
+            return result.get(TRANSFER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Transfer was not applied in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Partition partitionOf(Long accountId) {
+        return partitions[Math.floorMod(Long.hashCode(accountId), partitions.length)];
+    }
+
+    /**
+     * Apply every credit a previous run handed between partitions but did not
+     * get to, before any partition loads a balance.
+     */
+    private void recover() {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<PendingCredit> pending = pendingCreditRepository.findAll();
+            Map<Long, Money> deltas = new TreeMap<>();
+            List<BalanceChange> changes = new ArrayList<>();
+            for (PendingCredit credit : pending) {
+                deltas.merge(credit.getAccountId(), credit.getAmount(), Money::plus);
+                changes.add(new BalanceChange(credit.getCustomerId(), credit.getAccountId(), credit.getAmount()));
+            }
+            for (Map.Entry<Long, Money> delta : deltas.entrySet()) {
+                bankAccountRepository.credit(delta.getKey(), delta.getValue().toBigDecimal());
+            }
+            pendingCreditRepository.deleteAllInBatch(pending);
+            balanceReadModel.record(changes);
+            if (!pending.isEmpty()) {
+                log.info("Applied {} pending credits", pending.size());
+            }
+        });
+    }
+
+    // A transfer queued on its sender's partition.
+    private record Reserve(TransactionRequest request, CompletableFuture<TransferStatus> result) {
+    }
+
+    // The credit half of a transfer whose debit committed in another partition.
+    private record Credit(Long transactionId, Long accountId, Long customerId, Money amount,
+            CompletableFuture<TransferStatus> result) {
+    }
+
+    // What one partition writes in one database transaction.
+    private static final class Batch {
+        final List<Reserve> reserves = new ArrayList<>();
+        final List<Credit> credits = new ArrayList<>();
+        final List<Transaction> transactions = new ArrayList<>();
+
+        int size() {
+            return reserves.size() + credits.size();
+        }
+    }
+
+    private final class Partition implements Runnable {
+
+        final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        final Thread thread;
+
+        // In access order, so the least recently used balances are dropped first.
+        private final LinkedHashMap<Long, Money> balances = new LinkedHashMap<>(16, 0.75f, true);
+        // Credits whose batch failed, written again with the next one.
+        private final List<Credit> retry = new ArrayList<>();
+
+        Partition(int index) {
+            thread = new Thread(this, "transfer-partition-" + index);
+            thread.setDaemon(true);
+        }
+
+        boolean owns(Long accountId) {
+            return partitionOf(accountId) == this;
+        }
+
+        @Override
+        public void run() {
+            List<Object> messages = new ArrayList<>();
+            while (true) {
+                messages.clear();
+                messages.addAll(retry);
+                retry.clear();
+                Object first;
+                try {
+                    first = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    retry.addAll(creditsIn(messages));
+                    return;
+                }
+                if (first != null) {
+                    messages.add(first);
+                } else if (!running) {
+                    // credits still failing stay pending in the database
+                    retry.addAll(creditsIn(messages));
+                    return;
+                } else if (messages.isEmpty()) {
+                    continue;
+                }
+                queue.drainTo(messages, Math.max(0, maxBatch - messages.size()));
+                apply(messages);
+                trim();
+            }
+        }
+
+        // Nothing of the batch is uncommitted any more, so any balance may go.
+        private void trim() {
+            Iterator<Long> eldest = balances.keySet().iterator();
+            while (balances.size() > maxBalances) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        private void apply(List<Object> messages) {
+            load(messages);
+
+            Batch batch = new Batch();
+            for (Object message : messages) {
+                if (message instanceof Reserve reserve) {
+                    reserve(reserve, batch);
+                } else {
+                    batch.credits.add((Credit) message);
+                }
+            }
+            if (batch.size() == 0) {
+                return;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(batch));
+            } catch (RuntimeException e) {
+                log.warn("Writing a batch of {} transfer messages failed", batch.size(), e);
+                for (Reserve reserve : batch.reserves) {
+                    TransactionRequest request = reserve.request();
+                    balances.computeIfPresent(request.getSender_account_id(),
+                            (id, balance) -> balance.plus(request.getAmount()));
+                    reserve.result().completeExceptionally(e);
+                }
+                // still pending in the database, so they must be applied eventually
+                retry.addAll(batch.credits);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            batchSize.record(batch.size());
+
+            for (int i = 0; i < batch.reserves.size(); i++) {
+                Reserve reserve = batch.reserves.get(i);
+                TransactionRequest request = reserve.request();
+                if (owns(request.getReceiver_account_id())) {
+                    balances.computeIfPresent(request.getReceiver_account_id(),
+                            (id, balance) -> balance.plus(request.getAmount()));
+                    reserve.result().complete(TransferStatus.COMPLETED);
+                } else {
+                    partitionOf(request.getReceiver_account_id()).queue.add(new Credit(
+                            batch.transactions.get(i).getId(), request.getReceiver_account_id(),
+                            request.getReceiving_customer_id(), request.getAmount(), reserve.result()));
+                }
+            }
+            for (Credit credit : batch.credits) {
+                balances.computeIfPresent(credit.accountId(), (id, balance) -> balance.plus(credit.amount()));
+                credit.result().complete(TransferStatus.COMPLETED);
+            }
+        }
+
+        // Load the balances of senders this partition has not seen yet with one query.
+        private void load(List<Object> messages) {
+            Set<Long> missing = new HashSet<>();
+            for (Object message : messages) {
+                if (message instanceof Reserve reserve
+                        && !balances.containsKey(reserve.request().getSender_account_id())) {
+                    missing.add(reserve.request().getSender_account_id());
+                }
+            }
+            if (missing.isEmpty()) {
+                return;
+            }
+            try {
+                for (AccountBalance account : bankAccountRepository.findAccountBalancesByIds(missing)) {
+                    balances.put(account.getId(), account.getBalance());
+                }
+            } catch (RuntimeException e) {
+                // the reserves fail below, as their balance is still unknown
+                log.warn("Loading {} balances failed", missing.size(), e);
+            }
+        }
+
+        private void reserve(Reserve reserve, Batch batch) {
+            TransactionRequest request = reserve.request();
+            Money balance = balances.get(request.getSender_account_id());
+            if (balance == null) {
+                reserve.result().completeExceptionally(new IllegalStateException("No account found with that id"));
+            } else if (balance.isLessThan(request.getAmount())) {
+                reserve.result().complete(TransferStatus.INSUFFICIENT_FUNDS);
+            } else {
+                balances.put(request.getSender_account_id(), balance.minus(request.getAmount()));
+                batch.reserves.add(reserve);
+            }
+        }
+
+        /**
+         * Rows are updated in ascending account id order. No other partition
+         * writes them, so the order only matters against the hot account folder.
+         */
+        private void write(Batch batch) {
+            Map<Long, Money> deltas = new TreeMap<>();
+            List<BalanceChange> changes = new ArrayList<>();
+            batch.transactions.clear();
+            for (Reserve reserve : batch.reserves) {
+                TransactionRequest request = reserve.request();
+                for (BalanceChange change : TransferService.balanceChanges(request)) {
+                    if (owns(change.accountId())) {
+                        deltas.merge(change.accountId(), change.delta(), Money::plus);
+                        changes.add(change);
+                    }
+                }
+                batch.transactions.add(TransferService.newTransaction(request));
+            }
+            for (Credit credit : batch.credits) {
+                deltas.merge(credit.accountId(), credit.amount(), Money::plus);
+                changes.add(new BalanceChange(credit.customerId(), credit.accountId(), credit.amount()));
+            }
+
+            for (Map.Entry<Long, Money> delta : deltas.entrySet()) {
+                if (!delta.getValue().equals(Money.ZERO)
+                        && bankAccountRepository.credit(delta.getKey(), delta.getValue().toBigDecimal()) == 0) {
+                    throw new IllegalStateException("No account found with that id");
+                }
+            }
+            transactionRepository.saveAll(batch.transactions);
+
+            List<PendingCredit> handedOver = new ArrayList<>();
+            for (int i = 0; i < batch.reserves.size(); i++) {
+                TransactionRequest request = batch.reserves.get(i).request();
+                if (!owns(request.getReceiver_account_id())) {
+                    handedOver.add(new PendingCredit(batch.transactions.get(i).getId(),
+                            request.getReceiver_account_id(), request.getReceiving_customer_id(),
+                            request.getAmount()));
+                }
+            }
+            pendingCreditRepository.saveAll(handedOver);
+            if (!batch.credits.isEmpty()) {
+                pendingCreditRepository.deleteAllByIdInBatch(
+                        batch.credits.stream().map(Credit::transactionId).toList());
+            }
+
+            balanceReadModel.record(changes);
+        }
+
+        private List<Credit> creditsIn(List<Object> messages) {
+            List<Credit> credits = new ArrayList<>();
+            for (Object message : messages) {
+                if (message instanceof Credit credit) {
+                    credits.add(credit);
+                }
+            }
+            return credits;
+        }
+
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        recover();
+
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i);
+        }
+        running = true;
+        accepting = true;
+        for (Partition partition : partitions) {
+            partition.thread.start();
+        }
+    }
+
+    /**
+     * Turn new transfers away and wait until the accepted ones are answered, at
+     * most TRANSFER_TIMEOUT_SECONDS, then let every partition write what it has
+     * queued and stop. A transfer still queued after that fails. A credit still
+     * queued completes its transfer, whose debit and pending credit have both
+     * committed, and stays in pending_credits for the next start.
+     */
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        accepting = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TRANSFER_TIMEOUT_SECONDS);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (inFlight.get() > 0) {
+            log.warn("Stopping transfer partitions with {} transfers still in flight", inFlight.get());
+        }
+        running = false;
+        for (Partition partition : partitions) {
+            try {
+                partition.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                partition.thread.interrupt();
+            }
+        }
+
+        IllegalStateException stopped = new IllegalStateException("Transfer partitions are not running");
+        for (Partition partition : partitions) {
+            List<Object> left = new ArrayList<>(partition.retry);
+            partition.queue.drainTo(left);
+            for (Object message : left) {
+                if (message instanceof Reserve reserve) {
+                    reserve.result().completeExceptionally(stopped);
+                } else {
+                    ((Credit) message).result().complete(TransferStatus.COMPLETED);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+}
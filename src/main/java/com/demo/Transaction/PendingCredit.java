@@ -0,0 +1,38 @@
+package com.demo.Transaction;
+
+import com.demo.Bank.Money;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The credit half of a transfer between two partitions of the
+ * PartitionedTransferExecutor. It is written together with the debit and the
+ * Transaction row, and deleted together with the credit, so a credit that was
+ * handed over but not yet applied survives a restart.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "pending_credits")
+public class PendingCredit {
+
+    @Id
+    @Column(name = "transaction_id")
+    private Long transactionId;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Column(name = "amount", nullable = false, precision = 9, scale = 2)
+    private Money amount;
+
+}
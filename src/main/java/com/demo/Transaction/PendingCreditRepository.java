@@ -0,0 +1,6 @@
+package com.demo.Transaction;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PendingCreditRepository extends JpaRepository<PendingCredit, Long> {
+}
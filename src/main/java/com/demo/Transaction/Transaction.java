@@ -1,6 +1,10 @@
 package com.demo.Transaction;
 
-import java.math.BigDecimal;
+import java.time.Instant;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import com.demo.Bank.Money;
 
 import jakarta.persistence.*;
 
@@ -14,11 +18,16 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+        @Index(name = "idx_transactions_sender", columnList = "sender_account_id, id"),
+        @Index(name = "idx_transactions_receiver", columnList = "receiver_account_id, id"),
+        @Index(name = "idx_transactions_journal", columnList = "journal_sequence", unique = true) })
 public class Transaction {
 
+    // Sequence ids let Hibernate batch inserts, IDENTITY forces one insert per row.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+    @SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = 50)
     private Long id;
 
     @JoinColumn(name = "sender_account_id")
@@ -28,12 +37,28 @@ public class Transaction {
     private Long receiver_account_id;
 
     @Column(name = "amount")
-    private BigDecimal amount;
+    private Money amount;
+
+    // Owners of the two accounts. The details shown for a transaction are
+    // rendered from their names when it is read, see TransactionDetails.
+    @Column(name = "sender_customer_id", nullable = false)
+    private Long sender_customer_id;
+
+    @Column(name = "receiver_customer_id", nullable = false)
+    private Long receiver_customer_id;
+
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
 
-    @Column(name = "transaction_details")
-    private String transactionDetails;
+    // Set on rows projected from the TransferJournal, null otherwise.
+    @Column(name = "journal_sequence")
+    private Long journalSequence;
 
-    public String toString() {
-        return transactionDetails;
+    @PrePersist
+    void stampCreatedAt() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
     }
 }
@@ -0,0 +1,66 @@
+package com.demo.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.demo.Bank.Money;
+import com.demo.Customer.CustomerCache;
+
+/**
+ * Renders the human-readable details of a transaction, "FROM {sender_name}
+ * {amount} TO {receiver_name}", when it is read. Transaction rows only hold the
+ * two customer ids, the names come from the CustomerCache, so a history mostly
+ * renders without touching the customers table. A customer that no longer
+ * exists is rendered as UNKNOWN_CUSTOMER.
+ */
+@Component
+public class TransactionDetails {
+
+    public static final String UNKNOWN_CUSTOMER = "Unknown customer";
+
+    private final CustomerCache customerCache;
+
+    public TransactionDetails(CustomerCache customerCache) {
+        this.customerCache = customerCache;
+    }
+
+    /**
+     * Details of each transaction, in the same order. Names missing from the
+     * cache are loaded with a single query.
+     *
+     * @param transactions
+     * @return
+     */
+    public List<String> render(List<Transaction> transactions) {
+        Set<Long> customerIds = new HashSet<>();
+        for (Transaction transaction : transactions) {
+            customerIds.add(transaction.getSender_customer_id());
+            customerIds.add(transaction.getReceiver_customer_id());
+        }
+        Map<Long, String> names = customerCache.getNames(customerIds);
+
+        List<String> details = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            details.add(format(names.get(transaction.getSender_customer_id()), transaction.getAmount(),
+                    names.get(transaction.getReceiver_customer_id())));
+        }
+        return details;
+    }
+
+    public String render(Transaction transaction) {
+        return format(customerCache.getName(transaction.getSender_customer_id()), transaction.getAmount(),
+                customerCache.getName(transaction.getReceiver_customer_id()));
+    }
+
+    public static String format(String senderName, Money amount, String receiverName) {
+        return "FROM " + Objects.requireNonNullElse(senderName, UNKNOWN_CUSTOMER) + " " + amount.toDisplayString()
+                + " TO " + Objects.requireNonNullElse(receiverName, UNKNOWN_CUSTOMER);
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.demo.Transaction;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.demo.Bank.BankAccountRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+@Service
+public class TransactionExportService {
+
+    static final String CSV_HEADER = "id,sender_account_id,receiver_account_id,amount,created_at,transaction_details";
+
+    @Autowired
+    BankAccountRepository bankAccountRepository;
+
+    @Autowired
+    TransactionRepository transactionRepository;
+
+    @Autowired
+    TransactionDetails transactionDetails;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    // Rows are flushed into the buffered writer, not all the way to the client,
+    // and closing a generator leaves the writer open.
+    private final JsonFactory jsonFactory = new JsonFactory()
+            .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    public TransactionExportService(PlatformTransactionManager transactionManager) {
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Write every transaction of the customer within the id and time range to the
+     * output, oldest first. The sent and received sides of each account are read
+     * from forward-only cursors over their (account, id) index and merged by id,
+     * so no sort of the whole history is needed. Each row is written and then
+     * dropped from the persistence context, so memory use does not grow with the
+     * size of the history.
+     * 
+     * If writing fails, for example because the client went away, the cursor and
+     * its statement are closed and the read transaction ends straight away.
+     * 
+     * @param customerId
+     * @param format
+     * @param fromId     lowest transaction id to include
+     * @param toId       highest transaction id to include
+     * @param from       earliest creation time to include
+     * @param to         creation time to stop before
+     * @param out
+     */
+    public void export(Long customerId, ExportFormat format, long fromId, long toId, Instant from, Instant to,
+            OutputStream out) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            List<Long> accountIds = bankAccountRepository.findIdsByCustomerId(customerId);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try {
+                if (format == ExportFormat.CSV) {
+                    writer.write(CSV_HEADER);
+                    writer.write('\n');
+                }
+
+                // only NDJSON needs a generator
+                List<Stream<Transaction>> ranges = new ArrayList<>();
+                try (JsonGenerator json = format == ExportFormat.NDJSON ? jsonGenerator(writer) : null) {
+                    PriorityQueue<Range> heads = new PriorityQueue<>();
+                    for (Long accountId : accountIds) {
+                        Stream<Transaction> sent = transactionRepository.streamSent(accountId, fromId, toId, from, to);
+                        ranges.add(sent);
+                        Range.open(sent, heads);
+                        Stream<Transaction> received = transactionRepository.streamReceived(accountId, fromId, toId,
+                                from, to);
+                        ranges.add(received);
+                        Range.open(received, heads);
+                    }
+
+                    Long lastId = null;
+                    while (!heads.isEmpty()) {
+                        Range range = heads.poll();
+                        Transaction transaction = range.head;
+                        // transfers between two of the customer's own accounts are on both sides
+                        if (!transaction.getId().equals(lastId)) {
+                            if (format == ExportFormat.CSV) {
+                                writeCsv(transaction, writer);
+                            } else {
+                                writeJson(transaction, json);
+                                json.flush();
+                            }
+                            writer.write('\n');
+                            lastId = transaction.getId();
+                        }
+                        entityManager.detach(transaction);
+                        range.advance(heads);
+                    }
+                } finally {
+                    ranges.forEach(Stream::close);
+                }
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private JsonGenerator jsonGenerator(Writer writer) throws IOException {
+        JsonGenerator json = jsonFactory.createGenerator(writer);
+        json.setRootValueSeparator(null);
+        return json;
+    }
+
+    private void writeJson(Transaction transaction, JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", transaction.getId());
+        json.writeNumberField("sender_account_id", transaction.getSender_account_id());
+        json.writeNumberField("receiver_account_id", transaction.getReceiver_account_id());
+        json.writeFieldName("amount");
+        json.writeNumber(transaction.getAmount().toString());
+        json.writeStringField("created_at", transaction.getCreatedAt().toString());
+        json.writeStringField("transaction_details", transactionDetails.render(transaction));
+        json.writeEndObject();
+    }
+
+    private void writeCsv(Transaction transaction, Writer writer) throws IOException {
+        writer.write(transaction.getId().toString());
+        writer.write(',');
+        writer.write(transaction.getSender_account_id().toString());
+        writer.write(',');
+        writer.write(transaction.getReceiver_account_id().toString());
+        writer.write(',');
+        writer.write(transaction.getAmount().toString());
+        writer.write(',');
+        writer.write(transaction.getCreatedAt().toString());
+        writer.write(',');
+        writeCsvField(transactionDetails.render(transaction), writer);
+    }
+
+    private static void writeCsvField(String value, Writer writer) throws IOException {
+        if (value == null) {
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    // One account's sent or received transactions, in id order, and the next of
+    // them still to be written. Only the heads are held in memory.
+    private static final class Range implements Comparable<Range> {
+        private final Iterator<Transaction> rows;
+        private Transaction head;
+
+        private Range(Iterator<Transaction> rows) {
+            this.rows = rows;
+        }
+
+        static void open(Stream<Transaction> transactions, PriorityQueue<Range> heads) {
+            new Range(transactions.iterator()).advance(heads);
+        }
+
+        void advance(PriorityQueue<Range> heads) {
+            if (rows.hasNext()) {
+                head = rows.next();
+                heads.add(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Range other) {
+            return head.getId().compareTo(other.head.getId());
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.demo.Transaction;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One page of a customer's transactions in ascending id order. nextAfterId is
+ * the afterId to ask for the following page, or null on the last page.
+ */
+@AllArgsConstructor
+@Getter
+public class TransactionHistoryPage {
+
+    private final List<Transaction> transactions;
+
+    private final Long nextAfterId;
+
+}
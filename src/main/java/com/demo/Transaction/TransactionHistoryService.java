@@ -0,0 +1,72 @@
+package com.demo.Transaction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.demo.Bank.BankAccountRepository;
+
+@Service
+public class TransactionHistoryService {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    @Autowired
+    BankAccountRepository bankAccountRepository;
+
+    @Autowired
+    TransactionRepository transactionRepository;
+
+    /**
+     * Fetch the customer's transactions with an id greater than afterId, oldest
+     * first, at most limit of them. The customer's accounts are resolved first,
+     * then the sent and received sides of each account are read as one range scan
+     * of their (account, id) index, of at most one page each, and merged. The
+     * cost depends on the page size and the number of accounts, not on how many
+     * transactions the customer has in total.
+     * 
+     * @param customerId
+     * @param afterId
+     * @param limit
+     * @return
+     */
+    @Transactional(readOnly = true)
+    public TransactionHistoryPage page(Long customerId, long afterId, int limit) {
+        List<Long> accountIds = bankAccountRepository.findIdsByCustomerId(customerId);
+        if (accountIds.isEmpty()) {
+            return new TransactionHistoryPage(List.of(), null);
+        }
+
+        // one extra row tells us whether another page follows
+        PageRequest window = PageRequest.ofSize(limit + 1);
+        List<Transaction> candidates = new ArrayList<>();
+        for (Long accountId : accountIds) {
+            candidates.addAll(transactionRepository.findSentAfter(accountId, afterId, window));
+            candidates.addAll(transactionRepository.findReceivedAfter(accountId, afterId, window));
+        }
+        candidates.sort(Comparator.comparing(Transaction::getId));
+
+        List<Transaction> merged = new ArrayList<>(limit + 1);
+        for (Transaction transaction : candidates) {
+            if (merged.size() > limit) {
+                break;
+            }
+            // transfers between two of the customer's own accounts are on both sides
+            if (merged.isEmpty() || !merged.get(merged.size() - 1).getId().equals(transaction.getId())) {
+                merged.add(transaction);
+            }
+        }
+
+        if (merged.size() > limit) {
+            List<Transaction> page = merged.subList(0, limit);
+            return new TransactionHistoryPage(page, page.get(limit - 1).getId());
+        }
+        return new TransactionHistoryPage(merged, null);
+    }
+
+}
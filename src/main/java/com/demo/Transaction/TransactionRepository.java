@@ -1,12 +1,51 @@
 package com.demo.Transaction;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import jakarta.persistence.QueryHint;
+
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
-    @Query("SELECT t FROM Transaction t JOIN Customer c ON c.id = t.sender_account_id  OR  c.id = t.receiver_account_id WHERE c.id = :id")
+    @Query("SELECT t FROM Transaction t WHERE t.sender_account_id IN (SELECT a.id FROM BankAccount a WHERE a.customer_id = :id) OR t.receiver_account_id IN (SELECT a.id FROM BankAccount a WHERE a.customer_id = :id) ORDER BY t.id")
     List<Transaction> findAllByCustomerId(@Param("id") Long id);
-}
\ No newline at end of file
+
+    @Query("SELECT MAX(t.journalSequence) FROM Transaction t")
+    Long findMaxJournalSequence();
+
+    // Keyset pages over (sender_account_id, id) and (receiver_account_id, id), one
+    // account at a time. Ordered by the whole index key, the page is read off the
+    // index and the scan stops at the limit. An IN list of accounts would sort
+    // every match first. The Pageable only carries the limit, the position is
+    // always afterId.
+    @Query("SELECT t FROM Transaction t WHERE t.sender_account_id = :accountId AND t.id > :afterId ORDER BY t.sender_account_id, t.id")
+    List<Transaction> findSentAfter(@Param("accountId") Long accountId, @Param("afterId") Long afterId,
+            Pageable limit);
+
+    @Query("SELECT t FROM Transaction t WHERE t.receiver_account_id = :accountId AND t.id > :afterId ORDER BY t.receiver_account_id, t.id")
+    List<Transaction> findReceivedAfter(@Param("accountId") Long accountId, @Param("afterId") Long afterId,
+            Pageable limit);
+
+    // The same ranges as above, bounded by id and creation time instead of a
+    // limit, read forward-only in chunks of the fetch size. Must be consumed,
+    // and closed, inside a transaction.
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+    @Query("SELECT t FROM Transaction t WHERE t.sender_account_id = :accountId AND t.id BETWEEN :fromId AND :toId AND t.createdAt >= :from AND t.createdAt < :to ORDER BY t.sender_account_id, t.id")
+    Stream<Transaction> streamSent(@Param("accountId") Long accountId, @Param("fromId") Long fromId,
+            @Param("toId") Long toId, @Param("from") Instant from, @Param("to") Instant to);
+
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+    @Query("SELECT t FROM Transaction t WHERE t.receiver_account_id = :accountId AND t.id BETWEEN :fromId AND :toId AND t.createdAt >= :from AND t.createdAt < :to ORDER BY t.receiver_account_id, t.id")
+    Stream<Transaction> streamReceived(@Param("accountId") Long accountId, @Param("fromId") Long fromId,
+            @Param("toId") Long toId, @Param("from") Instant from, @Param("to") Instant to);
+}
@@ -1,6 +1,6 @@
 package com.demo.Transaction;
 
-import java.math.BigDecimal;
+import com.demo.Bank.Money;
 
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -33,10 +33,10 @@ public class TransactionRequest {
     private Long receiver_account_id;
 
     @Column(name = "amount")
-    private BigDecimal amount;
+    private Money amount;
 
     public TransactionRequest(Long sender_account_id, Long sending_customer_id, Long receiver_account_id,
-            Long receiving_customer_id, BigDecimal amount) {
+            Long receiving_customer_id, Money amount) {
         this.sender_account_id = sender_account_id;
         this.sending_customer_id = sending_customer_id;
         this.receiver_account_id = receiver_account_id;
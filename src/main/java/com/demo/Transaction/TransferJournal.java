@@ -0,0 +1,492 @@
+package com.demo.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.demo.Bank.Money;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Append-only journal of single transfers, enabled with
+ * bank.journal.enabled=true. Every transfer gets the next sequence number and
+ * a fixed 64 byte slot at sequence * 64 in a memory-mapped segment file, so
+ * the order of the slots is the exact order transfers were applied in. The
+ * record is forced to disk before the transfer's database transaction commits,
+ * and the Transaction row is inserted later by the JournalProjector.
+ *
+ * Writes are group committed: a single flusher thread forces the mapped
+ * segments once for every write that landed since its last force, so
+ * concurrent transfers share one fsync.
+ *
+ * The guarded debit stamps the sequence on the sender account. On restart a
+ * journaled transfer is known to have committed when its sender account
+ * carries that sequence or a later one. A transfer that rolls back after it was
+ * journaled has its slot voided, durably, before its account locks are
+ * released, so a later transfer on the same account cannot make it look
+ * committed.
+ *
+ * Segments are mapped when first read or written. Once the JournalProjector has
+ * checkpointed every sequence of a segment, and a later segment holds the
+ * checkpoint, the segment is unmapped and its file deleted, see release. The
+ * segment holding the checkpoint is kept, so a restart still finds where the
+ * sequence left off.
+ */
+@Component
+public class TransferJournal implements SmartLifecycle {
+
+    static final int RECORD_SIZE = 64;
+    static final short TRANSFER = 1;
+    static final short VOID = 2;
+
+    // Started before the projector, which recovers from it, and before the web server.
+    static final int PHASE = Integer.MAX_VALUE - 3;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentRecords;
+    private final Timer forceTimer;
+    private final DistributionSummary groupSize;
+
+    // Mapped segments by index, and the indexes of all segment files on disk.
+    private final Map<Long, Segment> segments = new ConcurrentHashMap<>();
+    private final NavigableSet<Long> segmentFiles = new ConcurrentSkipListSet<>();
+    // Segments written to since the flusher last forced them.
+    private final Set<Segment> dirty = ConcurrentHashMap.newKeySet();
+
+    // Reserved sequences whose transfer has not committed or rolled back yet.
+    private final ConcurrentSkipListSet<Long> unresolved = new ConcurrentSkipListSet<>();
+    // Reserved sequences with a record written by a transfer that has not finished.
+    private final Set<Long> written = ConcurrentHashMap.newKeySet();
+    private final AtomicLong lastCommitted = new AtomicLong();
+    private long lastReserved;
+
+    private final AtomicLong writes = new AtomicLong();
+    private long forced;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushRequested = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Condition resolved = lock.newCondition();
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public TransferJournal(@Value("${bank.journal.enabled:false}") boolean enabled,
+            @Value("${bank.journal.dir:journal}") Path dir,
+            @Value("${bank.journal.segment-records:65536}") int segmentRecords, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        this.forceTimer = Timer.builder("bank.journal.force")
+                .description("Time to force journal segments to disk")
+                .register(registry);
+        this.groupSize = DistributionSummary.builder("bank.journal.group.size")
+                .description("Journal records made durable by one force")
+                .register(registry);
+        Gauge.builder("bank.journal.segments", segments, Map::size)
+                .description("Journal segments currently mapped")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * Reserve the next sequence for a transfer. Must be called inside the
+     * transfer's database transaction, while holding its account locks. When the
+     * transaction finishes the sequence is resolved, and its record voided if
+     * one was appended but the transaction rolled back.
+     *
+     * @return the sequence, or null if the journal is disabled
+     */
+    public Long reserve() {
+        if (!enabled) {
+            return null;
+        }
+
+        long sequence;
+        lock.lock();
+        try {
+            sequence = ++lastReserved;
+            unresolved.add(sequence);
+        } finally {
+            lock.unlock();
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                resolve(sequence, status == STATUS_COMMITTED);
+            }
+        });
+        return sequence;
+    }
+
+    /**
+     * Write the record into its reserved slot and wait until it is on disk.
+     *
+     * @param record
+     */
+    void append(JournalRecord record) {
+        write(record);
+        written.add(record.sequence());
+        awaitDurable(writes.incrementAndGet());
+    }
+
+    private void resolve(long sequence, boolean committed) {
+        if (written.remove(sequence) && !committed) {
+            JournalRecord record = read(sequence);
+            write(record.asVoid());
+            awaitDurable(writes.incrementAndGet());
+        }
+        if (committed) {
+            lastCommitted.accumulateAndGet(sequence, Math::max);
+        }
+
+        lock.lock();
+        try {
+            unresolved.remove(sequence);
+            resolved.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the highest sequence up to which every transfer has committed or
+     *         rolled back
+     */
+    long resolvedThrough() {
+        lock.lock();
+        try {
+            return unresolved.isEmpty() ? lastReserved : unresolved.first() - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until transfers beyond the given sequence have been resolved.
+     *
+     * @param sequence
+     * @param timeout
+     * @param unit
+     * @return the current resolvedThrough, which may still be the given
+     *         sequence if the wait timed out
+     * @throws InterruptedException
+     */
+    long awaitResolvedBeyond(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            long through;
+            while ((through = unresolved.isEmpty() ? lastReserved : unresolved.first() - 1) <= sequence
+                    && nanos > 0) {
+                nanos = resolved.awaitNanos(nanos);
+            }
+            return through;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Highest sequence whose transfer has committed.
+    long lastCommitted() {
+        return lastCommitted.get();
+    }
+
+    long lastReserved() {
+        lock.lock();
+        try {
+            return lastReserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param sequence
+     * @return the record in the sequence's slot, or null if the slot was never
+     *         written or the write was torn
+     */
+    JournalRecord read(long sequence) {
+        byte[] bytes = new byte[RECORD_SIZE];
+        segment(sequence).buffer.get(offset(sequence), bytes);
+        return decode(sequence, bytes);
+    }
+
+    private void write(JournalRecord record) {
+        Segment segment = segment(record.sequence());
+        segment.buffer.put(offset(record.sequence()), encode(record));
+        dirty.add(segment);
+    }
+
+    private void awaitDurable(long ticket) {
+        lock.lock();
+        try {
+            flushRequested.signal();
+            while (forced < ticket) {
+                if (!running) {
+                    throw new IllegalStateException("Transfer journal is closed");
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            long target;
+            lock.lock();
+            try {
+                while (running && writes.get() == forced) {
+                    flushRequested.awaitUninterruptibly();
+                }
+                target = writes.get();
+            } finally {
+                lock.unlock();
+            }
+
+            long group = target - forced;
+            forceTimer.record(() -> {
+                for (Segment segment : dirty) {
+                    dirty.remove(segment);
+                    segment.buffer.force();
+                }
+            });
+            groupSize.record(group);
+
+            lock.lock();
+            try {
+                forced = target;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Unmap and delete the segments whose sequences all lie before the segment
+     * holding the given checkpoint. Called by the JournalProjector once the
+     * Transaction rows up to the checkpoint have committed, so none of those
+     * records is read again.
+     *
+     * @param checkpoint
+     */
+    void release(long checkpoint) {
+        if (checkpoint < 1) {
+            return;
+        }
+        for (Long index : segmentFiles.headSet((checkpoint - 1) / segmentRecords)) {
+            segmentFiles.remove(index);
+            Segment segment = segments.remove(index);
+            try {
+                if (segment != null) {
+                    dirty.remove(segment);
+                    // The mapping itself goes once the buffer is no longer reachable.
+                    segment.channel.close();
+                }
+                Files.deleteIfExists(segmentFile(index));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private int offset(long sequence) {
+        return (int) ((sequence - 1) % segmentRecords) * RECORD_SIZE;
+    }
+
+    private Segment segment(long sequence) {
+        return segments.computeIfAbsent((sequence - 1) / segmentRecords, this::openSegment);
+    }
+
+    private Segment openSegment(long index) {
+        try {
+            FileChannel channel = FileChannel.open(segmentFile(index), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segmentFiles.add(index);
+            return new Segment(channel,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentFile(long index) {
+        return dir.resolve(String.format("journal-%012d.dat", index));
+    }
+
+    static byte[] encode(JournalRecord record) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.putLong(0, record.sequence());
+        buffer.putShort(8, record.voided() ? VOID : TRANSFER);
+        buffer.putShort(10, (short) Money.SCALE);
+        buffer.putLong(16, ChronoUnit.MICROS.between(Instant.EPOCH, record.createdAt()));
+        buffer.putLong(24, record.senderAccountId());
+        buffer.putLong(32, record.receiverAccountId());
+        buffer.putLong(40, record.sendingCustomerId());
+        buffer.putLong(48, record.receivingCustomerId());
+        buffer.putLong(56, record.amount().getCents());
+        buffer.putInt(12, checksum(buffer.array()));
+        return buffer.array();
+    }
+
+    static JournalRecord decode(long sequence, byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        short type = buffer.getShort(8);
+        if (buffer.getLong(0) != sequence || (type != TRANSFER && type != VOID)
+                || buffer.getInt(12) != checksum(bytes)) {
+            return null;
+        }
+        return new JournalRecord(sequence, type == VOID,
+                Instant.EPOCH.plus(buffer.getLong(16), ChronoUnit.MICROS), buffer.getLong(24), buffer.getLong(32),
+                buffer.getLong(40), buffer.getLong(48),
+                amount(buffer.getLong(56), buffer.getShort(10)));
+    }
+
+    // Records written before amounts were Money carry the scale the request had.
+    private static Money amount(long unscaled, short scale) {
+        return scale == Money.SCALE ? Money.ofCents(unscaled) : Money.of(BigDecimal.valueOf(unscaled, scale));
+    }
+
+    // CRC32C of the record with the checksum field itself left out.
+    private static int checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, 12);
+        crc.update(bytes, 16, RECORD_SIZE - 16);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Find the existing segments and continue after the last record found in
+     * them. Only the segments scanned for that record are mapped.
+     */
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.list(dir)) {
+                files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.matches("journal-\\d{12}\\.dat"))
+                        .map(name -> Long.parseLong(name.substring(8, 20)))
+                        .forEach(segmentFiles::add);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastReserved = findLastRecord();
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "transfer-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Every sequence before the first segment left on disk was used and released.
+    private long findLastRecord() {
+        for (Long index : segmentFiles.descendingSet()) {
+            long first = index * segmentRecords + 1;
+            for (long sequence = first + segmentRecords - 1; sequence >= first; sequence--) {
+                if (read(sequence) != null) {
+                    return sequence;
+                }
+            }
+        }
+        return segmentFiles.isEmpty() ? 0 : segmentFiles.first() * segmentRecords;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            flushRequested.signalAll();
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        segments.clear();
+        segmentFiles.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    // Compared by identity, a buffer's equals and hashCode look at its contents.
+    private static final class Segment {
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+}
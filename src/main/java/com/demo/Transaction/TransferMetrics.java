@@ -0,0 +1,57 @@
+package com.demo.Transaction;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters for the TransferService. bank.transfer.stage times the validate,
+ * debit, credit and record steps of each transfer, and bank.transfers counts
+ * every transfer by its final TransferStatus, so each kind of rejection can be
+ * watched on its own.
+ */
+@Component
+class TransferMetrics {
+
+    final Timer validate;
+    final Timer debit;
+    final Timer credit;
+    final Timer record;
+
+    private final Map<TransferStatus, Counter> outcomes = new EnumMap<>(TransferStatus.class);
+
+    TransferMetrics(MeterRegistry registry) {
+        validate = stage(registry, "validate");
+        debit = stage(registry, "debit");
+        credit = stage(registry, "credit");
+        record = stage(registry, "record");
+
+        for (TransferStatus status : TransferStatus.values()) {
+            if (status != TransferStatus.VALID) {
+                outcomes.put(status, Counter.builder("bank.transfers")
+                        .description("Transfers by outcome")
+                        .tag("status", status.name())
+                        .register(registry));
+            }
+        }
+    }
+
+    private static Timer stage(MeterRegistry registry, String stage) {
+        return Timer.builder("bank.transfer.stage")
+                .description("Time spent in each step of a transfer")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    TransferStatus count(TransferStatus status) {
+        outcomes.get(status).increment();
+        return status;
+    }
+
+}
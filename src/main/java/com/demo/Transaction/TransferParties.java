@@ -0,0 +1,32 @@
+package com.demo.Transaction;
+
+import java.util.Map;
+
+import com.demo.Bank.BankAccount;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The customers and accounts referenced by one or more transfer requests, keyed
+ * by id. Customers are held by name. Ids that do not exist are simply absent.
+ * Accounts are only loaded by TransferValidator.loadForUpdate, otherwise the
+ * map is empty.
+ */
+@AllArgsConstructor
+@Getter
+public class TransferParties {
+
+    private final Map<Long, String> customerNames;
+
+    private final Map<Long, BankAccount> accounts;
+
+    public boolean hasCustomer(Long customerId) {
+        return customerNames.containsKey(customerId);
+    }
+
+    public String customerName(Long customerId) {
+        return customerNames.get(customerId);
+    }
+
+}
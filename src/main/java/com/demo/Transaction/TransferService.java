@@ -0,0 +1,205 @@
+package com.demo.Transaction;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.demo.Bank.BalanceChange;
+import com.demo.Bank.BalanceReadModel;
+import com.demo.Bank.BankAccount;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.HotAccounts;
+import com.demo.Bank.Money;
+
+@Service
+public class TransferService {
+
+    @Autowired
+    BankAccountRepository bankAccountRepository;
+
+    @Autowired
+    TransactionRepository transactionRepository;
+
+    @Autowired
+    TransferValidator transferValidator;
+
+    @Autowired
+    BalanceReadModel balanceReadModel;
+
+    @Autowired
+    TransferMetrics transferMetrics;
+
+    @Autowired
+    TransferJournal transferJournal;
+
+    @Autowired
+    HotAccounts hotAccounts;
+
+    /**
+     * Validate and apply a transfer in one database transaction. The customers
+     * and accounts are fetched with one batched lookup each, then the transfer is
+     * applied. Returns the first validation failure, INSUFFICIENT_FUNDS, or
+     * COMPLETED.
+     * 
+     * @param transactionRequest
+     * @return
+     */
+    @Transactional
+    public TransferStatus transfer(TransactionRequest transactionRequest) {
+        TransferParties parties = transferMetrics.validate
+                .record(() -> transferValidator.load(List.of(transactionRequest)));
+
+        TransferStatus status = transferValidator.validate(transactionRequest, parties);
+        if (status != TransferStatus.VALID) {
+            return transferMetrics.count(status);
+        }
+
+        return transferMetrics.count(apply(transactionRequest));
+    }
+
+    /**
+     * Validate and apply a list of transfers in one database transaction, in the
+     * order given. Every account involved is locked up front in ascending id
+     * order, then balances are moved in memory so later items see the effect of
+     * earlier ones. The changed accounts and the new transaction records are
+     * written with JDBC batching when the transaction commits.
+     * 
+     * Returns one status per request, in the same order. A failed item does not
+     * stop the rest of the batch.
+     * 
+     * @param transactionRequests
+     * @return
+     */
+    @Transactional
+    public List<TransferStatus> transferBatch(List<TransactionRequest> transactionRequests) {
+        TransferParties parties = transferMetrics.validate
+                .record(() -> transferValidator.loadForUpdate(transactionRequests));
+
+        List<TransferStatus> statuses = new ArrayList<>(transactionRequests.size());
+        List<Transaction> transactions = new ArrayList<>();
+        List<BalanceChange> changes = new ArrayList<>();
+        for (TransactionRequest request : transactionRequests) {
+            TransferStatus status = transferValidator.validate(request, parties);
+            if (status == TransferStatus.VALID) {
+                BankAccount sender = parties.getAccounts().get(request.getSender_account_id());
+                BankAccount receiver = parties.getAccounts().get(request.getReceiver_account_id());
+                Money amount = request.getAmount();
+
+                if (sender.getBalance().isLessThan(amount)) {
+                    status = TransferStatus.INSUFFICIENT_FUNDS;
+                } else {
+                    sender.setBalance(sender.getBalance().minus(amount));
+                    receiver.setBalance(receiver.getBalance().plus(amount));
+                    transactions.add(newTransaction(request));
+                    changes.addAll(balanceChanges(request));
+                    status = TransferStatus.COMPLETED;
+                }
+            }
+            statuses.add(transferMetrics.count(status));
+        }
+
+        transferMetrics.record.record(() -> {
+            transactionRepository.saveAll(transactions);
+            balanceReadModel.record(changes);
+        });
+        return statuses;
+    }
+
+    /**
+     * Move the requested amount from the sender account to the receiver account
+     * and record it. The amount was validated as positive before the lock order
+     * is chosen, so both orders behave the same. The debit is a single guarded
+     * update that only succeeds while the balance covers the amount, so no
+     * account row is ever read and written back from Java. If the debit matches no row, nothing is written
+     * and INSUFFICIENT_FUNDS is returned.
+     * 
+     * The two updates run in ascending account id order so row locks are taken
+     * in the same order as the batch path, which keeps the two deadlock free.
+     * 
+     * Credits to a hot account go to one of its shards, and a debit from one
+     * folds its shards into the account row first, see HotAccounts.
+     * 
+     * With the TransferJournal enabled the transfer is recorded in the journal,
+     * durably, before this transaction commits, and its Transaction row is
+     * inserted later by the JournalProjector.
+     * 
+     * @param transactionRequest
+     * @return
+     */
+    private TransferStatus apply(TransactionRequest transactionRequest) {
+        Long senderId = transactionRequest.getSender_account_id();
+        Long receiverId = transactionRequest.getReceiver_account_id();
+        Money amount = transactionRequest.getAmount();
+        Long journalSequence = transferJournal.reserve();
+
+        if (receiverId < senderId) {
+            if (credit(receiverId, amount) == 0) {
+                throw new IllegalStateException("No account found with that id");
+            }
+            if (debit(senderId, amount, journalSequence) == 0) {
+                // undo the credit above
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return TransferStatus.INSUFFICIENT_FUNDS;
+            }
+        } else {
+            if (debit(senderId, amount, journalSequence) == 0) {
+                return TransferStatus.INSUFFICIENT_FUNDS;
+            }
+            if (credit(receiverId, amount) == 0) {
+                // rolls back the debit above
+                throw new IllegalStateException("No account found with that id");
+            }
+        }
+
+        transferMetrics.record.record(() -> {
+            if (journalSequence == null) {
+                transactionRepository.save(newTransaction(transactionRequest));
+            } else {
+                transferJournal.append(JournalRecord.of(journalSequence, transactionRequest));
+            }
+            balanceReadModel.record(balanceChanges(transactionRequest));
+        });
+
+        return TransferStatus.COMPLETED;
+    }
+
+    private int debit(Long accountId, Money amount, Long journalSequence) {
+        BigDecimal decimal = amount.toBigDecimal();
+        return transferMetrics.debit.record(() -> {
+            if (hotAccounts.isHot(accountId)) {
+                hotAccounts.fold(accountId);
+            }
+            return bankAccountRepository.debit(accountId, decimal, journalSequence);
+        });
+    }
+
+    private int credit(Long accountId, Money amount) {
+        BigDecimal decimal = amount.toBigDecimal();
+        return transferMetrics.credit.record(() -> hotAccounts.isHot(accountId) ? hotAccounts.credit(accountId, decimal)
+                : bankAccountRepository.credit(accountId, decimal));
+    }
+
+    static Transaction newTransaction(TransactionRequest transactionRequest) {
+        Transaction transaction = new Transaction();
+        transaction.setSender_account_id(transactionRequest.getSender_account_id());
+        transaction.setReceiver_account_id(transactionRequest.getReceiver_account_id());
+        transaction.setSender_customer_id(transactionRequest.getSending_customer_id());
+        transaction.setReceiver_customer_id(transactionRequest.getReceiving_customer_id());
+        transaction.setAmount(transactionRequest.getAmount());
+        return transaction;
+    }
+
+    static List<BalanceChange> balanceChanges(TransactionRequest transactionRequest) {
+        return List.of(
+                new BalanceChange(transactionRequest.getSending_customer_id(),
+                        transactionRequest.getSender_account_id(), transactionRequest.getAmount().negate()),
+                new BalanceChange(transactionRequest.getReceiving_customer_id(),
+                        transactionRequest.getReceiver_account_id(), transactionRequest.getAmount()));
+    }
+
+}
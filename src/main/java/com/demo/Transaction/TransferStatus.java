@@ -0,0 +1,19 @@
+package com.demo.Transaction;
+
+/**
+ * Outcome of a transfer handed back by the transfer engine. The controller maps
+ * each value to the message it returns to the caller.
+ */
+public enum TransferStatus {
+    VALID,
+    COMPLETED,
+    BAD_SENDER_ID,
+    BAD_RECEIVER_ID,
+    BAD_SENDER_ACCOUNT_ID,
+    BAD_RECEIVER_ACCOUNT_ID,
+    BAD_OWNER_SENDER,
+    BAD_OWNER_RECEIVER,
+    // missing, zero or negative, the guarded debit would let a negative amount through
+    BAD_AMOUNT,
+    INSUFFICIENT_FUNDS
+}
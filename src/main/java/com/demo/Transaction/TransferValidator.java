@@ -0,0 +1,159 @@
+package com.demo.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.demo.Bank.AccountOwnerIndex;
+import com.demo.Bank.BankAccount;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.HotAccounts;
+import com.demo.Customer.CustomerCache;
+
+@Component
+public class TransferValidator {
+
+    @Autowired
+    CustomerCache customerCache;
+
+    @Autowired
+    BankAccountRepository bankAccountRepository;
+
+    @Autowired
+    HotAccounts hotAccounts;
+
+    @Autowired
+    AccountOwnerIndex accountOwnerIndex;
+
+    // Keeps the IN list of a locking load to a size every database accepts.
+    static final int LOCK_CHUNK_SIZE = 1000;
+
+    /**
+     * Load every customer referenced by the requests with at most one query, no
+     * matter how many requests are handed in. Customers come from the
+     * CustomerCache and only cache misses hit the database. Accounts are not
+     * loaded, validate checks them against the AccountOwnerIndex.
+     * 
+     * @param transactionRequests
+     * @return
+     */
+    public TransferParties load(Collection<TransactionRequest> transactionRequests) {
+        return load(transactionRequests, false);
+    }
+
+    /**
+     * Same as load, but the accounts are also loaded, with one query per chunk,
+     * and locked for the rest of the current transaction. Locks are taken in
+     * ascending account id order, in chunks of LOCK_CHUNK_SIZE ids. The shards
+     * of a hot account are drained into its loaded balance right after its row
+     * is locked, before any higher account.
+     * 
+     * @param transactionRequests
+     * @return
+     */
+    public TransferParties loadForUpdate(Collection<TransactionRequest> transactionRequests) {
+        return load(transactionRequests, true);
+    }
+
+    private TransferParties load(Collection<TransactionRequest> transactionRequests, boolean forUpdate) {
+        Set<Long> customerIds = new HashSet<>();
+        Set<Long> accountIds = new TreeSet<>();
+        for (TransactionRequest request : transactionRequests) {
+            customerIds.add(request.getSending_customer_id());
+            customerIds.add(request.getReceiving_customer_id());
+            addIfPresent(accountIds, request.getSender_account_id());
+            addIfPresent(accountIds, request.getReceiver_account_id());
+        }
+        customerIds.remove(null);
+
+        Map<Long, String> customerNames = customerCache.getNames(customerIds);
+
+        Map<Long, BankAccount> accounts = new HashMap<>();
+        if (forUpdate) {
+            List<Long> chunk = new ArrayList<>();
+            for (Long accountId : accountIds) {
+                chunk.add(accountId);
+                if (chunk.size() == LOCK_CHUNK_SIZE || hotAccounts.isHot(accountId)) {
+                    lockChunk(chunk, accounts);
+                    chunk.clear();
+                }
+            }
+            lockChunk(chunk, accounts);
+        }
+
+        return new TransferParties(customerNames, accounts);
+    }
+
+    private void lockChunk(List<Long> chunk, Map<Long, BankAccount> accounts) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        for (BankAccount account : bankAccountRepository.findAllByIdForUpdate(chunk)) {
+            if (hotAccounts.isHot(account.getId())) {
+                account.setBalance(account.getBalance().plus(hotAccounts.drainShards(account.getId())));
+            }
+            accounts.put(account.getId(), account);
+        }
+    }
+
+    private static void addIfPresent(Set<Long> ids, Long id) {
+        if (id != null) {
+            ids.add(id);
+        }
+    }
+
+    /**
+     * Check a request against the loaded parties. The checks run in the same order
+     * the controller has always reported them in. Returns VALID when the transfer
+     * may go ahead. The amount must be positive, so the debit always runs in the
+     * direction asked for. Funds are not checked here, the debit itself does that.
+     * Accounts and their owners come from the AccountOwnerIndex, which compares
+     * primitive ids and only hits the database for an id it does not hold.
+     * 
+     * @param request
+     * @param parties
+     * @return
+     */
+    public TransferStatus validate(TransactionRequest request, TransferParties parties) {
+        if (!parties.hasCustomer(request.getReceiving_customer_id())) {
+            return TransferStatus.BAD_RECEIVER_ID;
+        }
+        if (!parties.hasCustomer(request.getSending_customer_id())) {
+            return TransferStatus.BAD_SENDER_ID;
+        }
+
+        long senderOwner = accountOwnerIndex.ownerOf(request.getSender_account_id());
+        if (senderOwner == AccountOwnerIndex.NONE) {
+            return TransferStatus.BAD_SENDER_ACCOUNT_ID;
+        }
+
+        long receiverOwner = accountOwnerIndex.ownerOf(request.getReceiver_account_id());
+        if (receiverOwner == AccountOwnerIndex.NONE) {
+            return TransferStatus.BAD_RECEIVER_ACCOUNT_ID;
+        }
+
+        // both customers exist, so neither id is null
+        if (senderOwner != request.getSending_customer_id().longValue()) {
+            return TransferStatus.BAD_OWNER_SENDER;
+        }
+
+        if (receiverOwner != request.getReceiving_customer_id().longValue()) {
+            return TransferStatus.BAD_OWNER_RECEIVER;
+        }
+
+        if (request.getAmount() == null || !request.getAmount().isPositive()) {
+            return TransferStatus.BAD_AMOUNT;
+        }
+
+        return TransferStatus.VALID;
+    }
+
+}
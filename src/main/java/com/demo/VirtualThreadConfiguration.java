@@ -0,0 +1,38 @@
+package com.demo;
+
+import java.util.concurrent.Executors;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+/**
+ * Opt-in virtual-thread mode, enabled with bank.virtual-threads.enabled=true
+ * or the virtual-threads profile. Tomcat then runs every request on its own
+ * virtual thread instead of its bounded platform-thread pool, and so do the
+ * repository calls made by the request. Async work, such as writing a
+ * streamed export, runs on virtual threads too.
+ *
+ * Concurrency is then limited by the connection pool rather than by Tomcat's
+ * thread count, see application-virtual-threads.properties.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "bank.virtual-threads.enabled", havingValue = "true")
+class VirtualThreadConfiguration {
+
+    @Bean
+    TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor" })
+    AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+}
@@ -0,0 +1,79 @@
+CREATE TABLE IF NOT EXISTS customers(
+   id   BIGINT PRIMARY KEY AUTO_INCREMENT,
+   name VARCHAR(255) NOT NULL
+);
+
+CREATE SEQUENCE IF NOT EXISTS accounts_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS transactions_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS accounts(
+    id BIGINT PRIMARY KEY,
+    customer_id BIGINT NOT NULL,
+    balance DECIMAL(9, 2) NOT NULL DEFAULT 0,
+    journal_sequence BIGINT,
+    FOREIGN KEY (customer_id) REFERENCES customers(id)
+);
+
+-- Credit shards of hot accounts, see HotAccounts. A hot account's balance is its
+-- accounts row plus all of its shards.
+CREATE TABLE IF NOT EXISTS account_shards(
+    account_id BIGINT NOT NULL,
+    shard INTEGER NOT NULL,
+    balance DECIMAL(9, 2) NOT NULL DEFAULT 0,
+    PRIMARY KEY (account_id, shard),
+    FOREIGN KEY (account_id) REFERENCES accounts(id)
+);
+
+CREATE TABLE IF NOT EXISTS transactions(
+    id BIGINT PRIMARY KEY,
+    sender_account_id BIGINT NOT NULL,
+    FOREIGN KEY (sender_account_id) REFERENCES accounts(id),
+    receiver_account_id BIGINT NOT NULL,
+    FOREIGN KEY (receiver_account_id) REFERENCES accounts(id),
+    sender_customer_id BIGINT NOT NULL,
+    receiver_customer_id BIGINT NOT NULL,
+    amount DECIMAL(9, 2) NOT NULL,
+    created_at TIMESTAMP(6) WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    journal_sequence BIGINT
+);
+
+-- Credits handed from one transfer partition to another and not applied yet,
+-- see PartitionedTransferExecutor.
+CREATE TABLE IF NOT EXISTS pending_credits(
+    transaction_id BIGINT PRIMARY KEY,
+    account_id BIGINT NOT NULL,
+    customer_id BIGINT NOT NULL,
+    amount DECIMAL(9, 2) NOT NULL
+);
+
+-- Responses to requests sent with an Idempotency-Key, see IdempotencyStore.
+CREATE TABLE IF NOT EXISTS idempotency_keys(
+    idempotency_key VARCHAR(255) PRIMARY KEY,
+    status INTEGER NOT NULL,
+    body VARCHAR(4000) NOT NULL,
+    request_hash VARCHAR(64) NOT NULL,
+    customer_id BIGINT,
+    created_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+
+-- Request bodies are mapped as entities too, so Hibernate validates these tables.
+CREATE TABLE IF NOT EXISTS transaction_request(
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    sender_account_id BIGINT,
+    receiver_account_id BIGINT,
+    sending_customer_id BIGINT NOT NULL,
+    receiving_customer_id BIGINT NOT NULL,
+    amount DECIMAL(9, 2)
+);
+
+CREATE TABLE IF NOT EXISTS create_account_request(
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    customer_id BIGINT,
+    initial_deposit DECIMAL(9, 2)
+);
+
+CREATE INDEX IF NOT EXISTS idx_accounts_customer ON accounts(customer_id);
+CREATE INDEX IF NOT EXISTS idx_transactions_sender ON transactions(sender_account_id, id);
+CREATE INDEX IF NOT EXISTS idx_transactions_receiver ON transactions(receiver_account_id, id);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_transactions_journal ON transactions(journal_sequence);
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_created ON idempotency_keys(created_at);
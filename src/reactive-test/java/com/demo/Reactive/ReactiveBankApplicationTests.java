@@ -0,0 +1,178 @@
+package com.demo.Reactive;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRequest;
+
+//schema.sql and data.sql are run by Spring Boot against a fresh in-memory database for every test.
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ActiveProfiles(ReactiveBankApplication.PROFILE)
+@SpringBootTest(classes = ReactiveBankApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "spring.r2dbc.url=r2dbc:h2:mem:///reactive-${random.uuid}")
+class ReactiveBankApplicationTests {
+
+	static final ParameterizedTypeReference<List<String>> MESSAGES = new ParameterizedTypeReference<>() {
+	};
+
+	// accounts of data.sql and their owners
+	static final Map<Long, Long> OWNERS = Map.of(1L, 1L, 2L, 1L, 3L, 2L, 4L, 3L, 5L, 4L, 6L, 5L);
+
+	@Autowired
+	WebTestClient webTestClient;
+
+	@BeforeEach
+	void setUp() {
+		webTestClient = webTestClient.mutate().responseTimeout(Duration.ofSeconds(30)).build();
+	}
+
+    // A transfer moves the money, and one the sender cannot cover changes nothing
+    @Test
+    void testTransfer() {
+		// Georgina Hazel sends 20 to Judah Parham
+		assertEquals(List.of("Transfer successful"), transfer(5L, 6L, Money.of("20"), HttpStatus.OK));
+		assertEquals(List.of("60.00"), balances(4L, HttpStatus.OK));
+		assertEquals(List.of("9019.00"), balances(5L, HttpStatus.OK));
+
+		assertEquals(List.of("Insufficient funds"), transfer(5L, 6L, Money.of("1000000"), HttpStatus.BAD_REQUEST));
+		assertEquals(List.of("Amount must be greater than zero"),
+				transfer(5L, 6L, Money.of("0"), HttpStatus.BAD_REQUEST));
+		assertEquals(List.of("60.00"), balances(4L, HttpStatus.OK));
+	}
+
+    // Balances are listed per account, unknown customers are rejected
+    @Test
+    void testBalances() {
+		assertEquals(List.of("520.00", "5520.00"), balances(1L, HttpStatus.OK));
+		assertEquals(List.of("Invalid customer id"), balances(999L, HttpStatus.BAD_REQUEST));
+	}
+
+    // The streamed history and its pages hold the same transactions, oldest first
+    @Test
+    void testHistory() {
+		assertEquals(List.of("FROM Georgina Hazel 20 TO Arisha Barron", "FROM Branden Gibson 20 TO Georgina Hazel"),
+				webTestClient.get().uri("/api/getCustomerTransactionDetails/4").exchange()
+						.expectStatus().isOk()
+						.expectBody(MESSAGES).returnResult().getResponseBody());
+
+		String nextAfterId = webTestClient.get().uri("/api/getCustomerTransactionHistory/4?limit=1").exchange()
+				.expectStatus().isOk()
+				.expectBody(MESSAGES).isEqualTo(List.of("FROM Georgina Hazel 20 TO Arisha Barron"))
+				.returnResult().getResponseHeaders().getFirst("Next-After-Id");
+		assertNotNull(nextAfterId);
+
+		webTestClient.get().uri("/api/getCustomerTransactionHistory/4?limit=1&afterId=" + nextAfterId).exchange()
+				.expectStatus().isOk()
+				.expectHeader().doesNotExist("Next-After-Id")
+				.expectBody(MESSAGES).isEqualTo(List.of("FROM Branden Gibson 20 TO Georgina Hazel"));
+
+		// Judah Parham has an account but no transactions
+		webTestClient.get().uri("/api/getCustomerTransactionDetails/5").exchange()
+				.expectStatus().isBadRequest()
+				.expectBody(MESSAGES).isEqualTo(List.of("No transactions found"));
+	}
+
+    // Concurrent transfers between the same accounts neither create nor lose
+    // money, and every account ends up with exactly the completed transfers
+    @Test
+    void testConcurrentTransfersConserveMoney() throws Exception {
+		Map<Long, BigDecimal> expected = new TreeMap<>(Map.of(1L, new BigDecimal("520"), 2L,
+				new BigDecimal("5520"), 3L, new BigDecimal("800"), 4L, new BigDecimal("8400"), 5L,
+				new BigDecimal("80"), 6L, new BigDecimal("8999")));
+		BigDecimal total = expected.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+
+		ConcurrentLinkedQueue<long[]> completed = new ConcurrentLinkedQueue<>();
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < 25; j++) {
+					long sender = ThreadLocalRandom.current().nextLong(1, 7);
+					long receiver = sender % 6 + 1;
+					long amount = ThreadLocalRandom.current().nextLong(1, 200);
+					List<String> res = webTestClient.put().uri("/api/transfer")
+							.bodyValue(request(sender, receiver, Money.of(BigDecimal.valueOf(amount))))
+							.exchange()
+							.expectBody(MESSAGES).returnResult().getResponseBody();
+					if (res.equals(List.of("Transfer successful"))) {
+						completed.add(new long[] { sender, receiver, amount });
+					} else {
+						assertEquals(List.of("Insufficient funds"), res);
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertFalse(completed.isEmpty());
+
+		for (long[] transfer : completed) {
+			BigDecimal amount = BigDecimal.valueOf(transfer[2]);
+			expected.merge(transfer[0], amount.negate(), BigDecimal::add);
+			expected.merge(transfer[1], amount, BigDecimal::add);
+		}
+
+		BigDecimal found = BigDecimal.ZERO;
+		for (long customer = 1; customer <= 5; customer++) {
+			for (String balance : balances(customer, HttpStatus.OK)) {
+				found = found.add(new BigDecimal(balance));
+			}
+		}
+		assertEquals(0, total.compareTo(found));
+
+		// balances are listed in account order
+		Map<Long, List<String>> expectedBalances = new TreeMap<>();
+		for (Map.Entry<Long, BigDecimal> account : expected.entrySet()) {
+			assertTrue(account.getValue().signum() >= 0);
+			expectedBalances.computeIfAbsent(OWNERS.get(account.getKey()), customer -> new ArrayList<>())
+					.add(Money.of(account.getValue()).toString());
+		}
+		for (Map.Entry<Long, List<String>> customer : expectedBalances.entrySet()) {
+			assertEquals(customer.getValue(), balances(customer.getKey(), HttpStatus.OK));
+		}
+	}
+
+	private List<String> transfer(Long sender, Long receiver, Money amount, HttpStatus status) {
+		return webTestClient.put().uri("/api/transfer")
+				.bodyValue(request(sender, receiver, amount))
+				.exchange()
+				.expectStatus().isEqualTo(status)
+				.expectBody(MESSAGES).returnResult().getResponseBody();
+	}
+
+	private static TransactionRequest request(Long sender, Long receiver, Money amount) {
+		return new TransactionRequest(sender, OWNERS.get(sender), receiver, OWNERS.get(receiver), amount);
+	}
+
+	private List<String> balances(Long customer, HttpStatus status) {
+		return webTestClient.get().uri("/api/getCustomerBalances/" + customer)
+				.exchange()
+				.expectStatus().isEqualTo(status)
+				.expectBody(MESSAGES).returnResult().getResponseBody();
+	}
+
+}
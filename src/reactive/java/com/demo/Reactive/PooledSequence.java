@@ -0,0 +1,52 @@
+package com.demo.Reactive;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Ids from one of the schema.sql sequences, handed out the way Hibernate's
+ * pooled-lo optimizer does for the servlet application: every sequence value
+ * reserves it and the next ALLOCATION_SIZE - 1 ids, so only one id in fifty
+ * costs a database round trip.
+ */
+class PooledSequence {
+
+    // Must match the INCREMENT BY of the sequence and the entity's allocationSize.
+    static final int ALLOCATION_SIZE = 50;
+
+    private record Block(AtomicLong next, long end) {
+    }
+
+    private final DatabaseClient databaseClient;
+    private final String sequence;
+    private final AtomicReference<Block> block = new AtomicReference<>(new Block(new AtomicLong(), 0));
+
+    PooledSequence(DatabaseClient databaseClient, String sequence) {
+        this.databaseClient = databaseClient;
+        this.sequence = sequence;
+    }
+
+    Mono<Long> next() {
+        return Mono.defer(() -> {
+            Block current = block.get();
+            long id = current.next().getAndIncrement();
+            if (id < current.end()) {
+                return Mono.just(id);
+            }
+            // Callers racing here each fetch a block of their own, and the last one
+            // becomes the shared block. The ids left in the others are skipped.
+            return databaseClient.sql("SELECT NEXT VALUE FOR " + sequence)
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .map(low -> {
+                        block.set(new Block(new AtomicLong(low + 1), low + ALLOCATION_SIZE));
+                        return low;
+                    });
+        });
+    }
+
+}
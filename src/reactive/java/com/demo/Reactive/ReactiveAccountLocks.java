@@ -0,0 +1,77 @@
+package com.demo.Reactive;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The non-blocking counterpart of AccountLockManager: work on the same
+ * accounts runs one at a time, without parking a thread while it waits. Each
+ * stripe holds the release signal of its latest holder, and the next holder
+ * chains onto it. Stripes are taken in ascending order, which keeps it
+ * deadlock free for the same reason AccountLockManager is.
+ *
+ * This also keeps transfers from waiting on each other's row locks inside
+ * H2, whose R2DBC driver runs statements on the calling thread. A lock wait
+ * there would stall a Netty event loop.
+ */
+@Profile(ReactiveBankApplication.PROFILE)
+@Component
+class ReactiveAccountLocks {
+
+    private final AtomicReference<Mono<Void>>[] tails;
+
+    @SuppressWarnings("unchecked")
+    ReactiveAccountLocks(@Value("${bank.locks.stripes:1024}") int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Lock stripes must be a power of two");
+        }
+        tails = new AtomicReference[stripes];
+        for (int i = 0; i < stripes; i++) {
+            tails[i] = new AtomicReference<>(Mono.empty());
+        }
+    }
+
+    /**
+     * Subscribe to the work once the locks of every given account are held, and
+     * release them when it terminates or is cancelled. Null ids are ignored.
+     *
+     * @param accountIds
+     * @param work
+     * @return
+     */
+    <T> Mono<T> withAccountLocks(Collection<Long> accountIds, Supplier<Mono<T>> work) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Long accountId : accountIds) {
+            if (accountId != null) {
+                stripes.add(Long.hashCode(accountId) & (tails.length - 1));
+            }
+        }
+        return locked(stripes.toArray(new Integer[0]), 0, work);
+    }
+
+    private <T> Mono<T> locked(Integer[] stripes, int index, Supplier<Mono<T>> work) {
+        if (index == stripes.length) {
+            return Mono.defer(work);
+        }
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> release = Sinks.empty();
+            Mono<Void> previous = tails[stripes[index]].getAndSet(release.asMono());
+            // Hop off the releasing thread, or a long queue of waiters would run
+            // one inside the other on the same stack.
+            return previous.publishOn(Schedulers.parallel())
+                    .then(locked(stripes, index + 1, work))
+                    .doFinally(signal -> release.tryEmitEmpty());
+        });
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.demo.Reactive;
+
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking variant of the bank API on WebFlux and R2DBC, built with the
+ * reactive Maven profile. It serves the same balance, history, account
+ * creation and transfer endpoints as BankController, with the same messages
+ * and status codes, against the schema in schema.sql.
+ *
+ * Everything in this package belongs to the reactive Spring profile, so the
+ * servlet DemoApplication, whose component scan covers this package, ignores
+ * it.
+ */
+@Profile(ReactiveBankApplication.PROFILE)
+@SpringBootApplication
+public class ReactiveBankApplication {
+
+    public static final String PROFILE = "reactive";
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(ReactiveBankApplication.class).profiles(PROFILE).run(args);
+    }
+
+    // Tomcat is on the classpath for the servlet application and would otherwise
+    // be picked first.
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * The pool Spring Boot would build from the spring.r2dbc properties, except
+     * that connections are handed to their borrowers on the databaseScheduler.
+     * By default a released connection goes to the next waiting borrower on the
+     * releasing thread, and the H2 driver runs that borrower's statements right
+     * there. Under load one Netty event loop kept running queued borrowers back to
+     * back and did not read its own connections again until the load stopped.
+     *
+     * @param properties
+     * @param databaseScheduler
+     * @return
+     */
+    @Bean(destroyMethod = "dispose")
+    ConnectionPool connectionFactory(R2dbcProperties properties, Scheduler databaseScheduler) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(properties.getUrl()).mutate()
+                .option(ConnectionFactoryOptions.USER, properties.getUsername())
+                .option(ConnectionFactoryOptions.PASSWORD, properties.getPassword())
+                .build();
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(properties.getPool().getInitialSize())
+                .maxSize(properties.getPool().getMaxSize())
+                .customizer(pool -> pool.acquisitionScheduler(databaseScheduler))
+                .build());
+    }
+
+    // One thread per pooled connection, the statements of its borrower run on it.
+    @Bean(destroyMethod = "dispose")
+    Scheduler databaseScheduler(R2dbcProperties properties) {
+        return Schedulers.newBoundedElastic(properties.getPool().getMaxSize(), Integer.MAX_VALUE, "r2dbc-pool");
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.demo.Reactive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.demo.Bank.CreateAccountRequest;
+import com.demo.Bank.Money;
+import com.demo.Reactive.ReactiveBankRepository.HistoryRow;
+import com.demo.Transaction.TransactionHistoryService;
+import com.demo.Transaction.TransactionRequest;
+import com.demo.Transaction.TransferStatus;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The BankController endpoints for balances, history, account creation and
+ * transfers, on WebFlux. Paths, request bodies, messages and status codes are
+ * the same, except that the full transaction history is streamed to the client
+ * as a Flux, at the pace the client reads it.
+ */
+@Profile(ReactiveBankApplication.PROFILE)
+@RestController
+@RequestMapping("/api")
+class ReactiveBankController {
+
+    private final ReactiveBankRepository repository;
+    private final ReactiveTransferService transferService;
+    private final ReactiveAccountLocks accountLocks;
+
+    final String BAD_CUSTOMER_ID = "Invalid customer id";
+    final String BAD_SENDER_ID = "Invalid sender id";
+    final String BAD_RECEIVER_ID = "Invalid receiver id";
+    final String BAD_OWNER_SENDER = "Sending bank account does not belong to sending customer";
+    final String BAD_OWNER_RECEIVER = "Receiving bank account does not belong to receiving customer";
+    final String NO_TRANSACTIONS_FOUND = "No transactions found";
+    final String INSUFFICIENT_FUNDS = "Insufficient funds";
+    final String BAD_AMOUNT = "Amount must be greater than zero";
+    final String BAD_INITIAL_DEPOSIT = "Initial deposit be a number and equal or greater than zero";
+    final String ACCOUNT_CREATED = "Account successfully created";
+    final String TRANSFER_COMPLETED = "Transfer successful";
+    final String BAD_SENDER_ACCOUNT_ID = "Sender does not have an account with that id";
+    final String BAD_RECEIVER_ACCOUNT_ID = "Receiver does not have an account with that id";
+    final String BAD_PAGE_LIMIT = "Limit must be between 1 and " + TransactionHistoryService.MAX_PAGE_SIZE;
+    final String NEXT_AFTER_ID_HEADER = "Next-After-Id";
+
+    ReactiveBankController(ReactiveBankRepository repository, ReactiveTransferService transferService,
+            ReactiveAccountLocks accountLocks) {
+        this.repository = repository;
+        this.transferService = transferService;
+        this.accountLocks = accountLocks;
+    }
+
+    /**
+     * Stream the transaction history of a customer, oldest first, as the same
+     * JSON array BankController returns. Rows are read from the database only as
+     * fast as the client consumes them.
+     *
+     * @param id
+     * @return
+     */
+    @GetMapping(path = "/getCustomerTransactionDetails/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Flux<TextNode>>> returnTransferHistory(@PathVariable Long id) {
+        return repository.customerExists(id).flatMap(exists -> {
+            if (!exists) {
+                return Mono.just(new ResponseEntity<>(jsonStrings(Flux.just(BAD_CUSTOMER_ID)), HttpStatus.BAD_REQUEST));
+            }
+            // The status goes out before the first row, so emptiness is checked up front.
+            return repository.findHistoryAfter(id, 0, 1).hasElements()
+                    .map(any -> any ? ResponseEntity.ok(jsonStrings(repository.streamTransactionDetails(id)))
+                            : new ResponseEntity<>(jsonStrings(Flux.just(NO_TRANSACTIONS_FOUND)),
+                                    HttpStatus.BAD_REQUEST));
+        }).onErrorResume(e -> Mono.just(new ResponseEntity<>(jsonStrings(Flux.just(String.valueOf(e.getMessage()))),
+                HttpStatus.INTERNAL_SERVER_ERROR)));
+    }
+
+    // Jackson writes a Flux as a JSON array element by element, but a Flux of bare
+    // Strings would go to the plain text encoder and be concatenated.
+    private static Flux<TextNode> jsonStrings(Flux<String> strings) {
+        return strings.map(TextNode::valueOf);
+    }
+
+    /**
+     * One keyset page of the transaction history, as in BankController. A page is
+     * bounded, so it is collected to be able to set the Next-After-Id header.
+     *
+     * @param id
+     * @param afterId
+     * @param limit
+     * @return
+     */
+    @GetMapping("/getCustomerTransactionHistory/{id}")
+    public Mono<ResponseEntity<List<String>>> returnTransferHistoryPage(@PathVariable Long id,
+            @RequestParam(defaultValue = "0") long afterId, @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > TransactionHistoryService.MAX_PAGE_SIZE) {
+            return Mono.just(new ResponseEntity<>(List.of(BAD_PAGE_LIMIT), HttpStatus.BAD_REQUEST));
+        }
+        return repository.customerExists(id).flatMap(exists -> {
+            if (!exists) {
+                return Mono.just(new ResponseEntity<>(List.of(BAD_CUSTOMER_ID), HttpStatus.BAD_REQUEST));
+            }
+            // one extra row tells us whether another page follows
+            return repository.findHistoryAfter(id, afterId, limit + 1).collectList().map(rows -> {
+                if (rows.isEmpty() && afterId == 0) {
+                    return new ResponseEntity<>(List.of(NO_TRANSACTIONS_FOUND), HttpStatus.BAD_REQUEST);
+                }
+
+                HttpHeaders headers = new HttpHeaders();
+                List<HistoryRow> page = rows;
+                if (rows.size() > limit) {
+                    page = rows.subList(0, limit);
+                    headers.set(NEXT_AFTER_ID_HEADER, page.get(limit - 1).id().toString());
+                }
+                List<String> res = new ArrayList<>(page.size());
+                for (HistoryRow row : page) {
+                    res.add(row.transactionDetails());
+                }
+                return new ResponseEntity<>(res, headers, HttpStatus.OK);
+            });
+        }).onErrorResume(e -> Mono.just(
+                new ResponseEntity<>(List.of(String.valueOf(e.getMessage())), HttpStatus.INTERNAL_SERVER_ERROR)));
+    }
+
+    /**
+     * Get all balances for a customer, read straight from the accounts table.
+     *
+     * @param id
+     * @return
+     */
+    @GetMapping("/getCustomerBalances/{id}")
+    public Mono<ResponseEntity<List<String>>> getCustomerBalancesById(@PathVariable Long id) {
+        return repository.customerExists(id).flatMap(exists -> {
+            if (!exists) {
+                return Mono.just(new ResponseEntity<>(List.of(BAD_CUSTOMER_ID), HttpStatus.BAD_REQUEST));
+            }
+            return repository.findBalances(id).map(Money::toString).collectList()
+                    .map(balances -> balances.isEmpty() ? new ResponseEntity<List<String>>(HttpStatus.NOT_FOUND)
+                            : ResponseEntity.ok(balances));
+        }).onErrorResume(e -> Mono.just(
+                new ResponseEntity<>(List.of(String.valueOf(e.getMessage())), HttpStatus.INTERNAL_SERVER_ERROR)));
+    }
+
+    /*
+     * Create a new bank account for a customer, with an initial deposit amount
+     * that must be zero or more.
+     */
+    @PostMapping("/createBankAccount")
+    public Mono<ResponseEntity<List<String>>> createNewBankAccountForCustomer(
+            @RequestBody CreateAccountRequest request) {
+        return repository.customerExists(request.getCustomer_id()).flatMap(exists -> {
+            if (!exists) {
+                return Mono.just(new ResponseEntity<>(List.of(BAD_CUSTOMER_ID), HttpStatus.BAD_REQUEST));
+            }
+            if (request.getInitialDeposit().isNegative()) {
+                return Mono.just(new ResponseEntity<>(List.of(BAD_INITIAL_DEPOSIT), HttpStatus.BAD_REQUEST));
+            }
+            return repository.insertAccount(request.getCustomer_id(), request.getInitialDeposit())
+                    .thenReturn(ResponseEntity.ok(List.of(ACCOUNT_CREATED)));
+        }).onErrorResume(e -> Mono.just(
+                new ResponseEntity<>(List.of(String.valueOf(e.getMessage())), HttpStatus.INTERNAL_SERVER_ERROR)));
+    }
+
+    /*
+     * Transfer an amount between any two accounts, while holding the locks of
+     * both accounts.
+     */
+    @PutMapping("/transfer")
+    public Mono<ResponseEntity<List<String>>> transferBetweenAccountsAndRecordTransaction(
+            @RequestBody TransactionRequest transactionRequest) {
+        return accountLocks.withAccountLocks(
+                Arrays.asList(transactionRequest.getSender_account_id(), transactionRequest.getReceiver_account_id()),
+                () -> transferService.transfer(transactionRequest))
+                .map(status -> status == TransferStatus.COMPLETED ? ResponseEntity.ok(List.of(TRANSFER_COMPLETED))
+                        : new ResponseEntity<>(List.of(transferMessage(status)), HttpStatus.BAD_REQUEST))
+                .onErrorResume(e -> Mono.just(
+                        new ResponseEntity<>(List.of(String.valueOf(e.getMessage())), HttpStatus.BAD_REQUEST)));
+    }
+
+    String transferMessage(TransferStatus status) {
+        return switch (status) {
+            case COMPLETED -> TRANSFER_COMPLETED;
+            case BAD_SENDER_ID -> BAD_SENDER_ID;
+            case BAD_RECEIVER_ID -> BAD_RECEIVER_ID;
+            case BAD_SENDER_ACCOUNT_ID -> BAD_SENDER_ACCOUNT_ID;
+            case BAD_RECEIVER_ACCOUNT_ID -> BAD_RECEIVER_ACCOUNT_ID;
+            case BAD_OWNER_SENDER -> BAD_OWNER_SENDER;
+            case BAD_OWNER_RECEIVER -> BAD_OWNER_RECEIVER;
+            case BAD_AMOUNT -> BAD_AMOUNT;
+            case INSUFFICIENT_FUNDS -> INSUFFICIENT_FUNDS;
+            case VALID -> throw new IllegalStateException("Transfer was validated but not applied");
+        };
+    }
+
+}
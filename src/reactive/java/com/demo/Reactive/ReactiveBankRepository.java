@@ -0,0 +1,176 @@
+package com.demo.Reactive;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringJoiner;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionDetails;
+
+import io.r2dbc.spi.Readable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * SQL for the reactive endpoints, on the tables schema.sql creates. The
+ * statements mirror the JPA repositories of the servlet application: the same
+ * guarded debit, the same history order, and ids drawn from the same pooled
+ * sequences.
+ */
+@Profile(ReactiveBankApplication.PROFILE)
+@Repository
+class ReactiveBankRepository {
+
+    record CustomerName(Long id, String name) {
+    }
+
+    record AccountOwner(Long id, Long customerId) {
+    }
+
+    record HistoryRow(Long id, String transactionDetails) {
+    }
+
+    private final DatabaseClient databaseClient;
+    private final PooledSequence accountIds;
+    private final PooledSequence transactionIds;
+
+    ReactiveBankRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+        this.accountIds = new PooledSequence(databaseClient, "accounts_seq");
+        this.transactionIds = new PooledSequence(databaseClient, "transactions_seq");
+    }
+
+    Mono<Boolean> customerExists(Long id) {
+        return databaseClient.sql("SELECT 1 FROM customers WHERE id = :id")
+                .bind("id", id)
+                .map(row -> 1)
+                .one()
+                .hasElement();
+    }
+
+    Flux<CustomerName> findCustomerNames(Collection<Long> ids) {
+        return databaseClient.sql("SELECT id, name FROM customers WHERE id IN (:ids)")
+                .bind("ids", ids)
+                .map(row -> new CustomerName(row.get("id", Long.class), row.get("name", String.class)))
+                .all();
+    }
+
+    Flux<AccountOwner> findAccountOwners(Collection<Long> ids) {
+        return databaseClient.sql("SELECT id, customer_id FROM accounts WHERE id IN (:ids)")
+                .bind("ids", ids)
+                .map(row -> new AccountOwner(row.get("id", Long.class), row.get("customer_id", Long.class)))
+                .all();
+    }
+
+    // Includes the credit shards of hot accounts, as BankAccountRepository does.
+    Flux<Money> findBalances(Long customerId) {
+        return databaseClient.sql("SELECT a.balance + COALESCE(SUM(s.balance), 0) AS balance FROM accounts a "
+                + "LEFT JOIN account_shards s ON s.account_id = a.id WHERE a.customer_id = :id "
+                + "GROUP BY a.id, a.balance ORDER BY a.id")
+                .bind("id", customerId)
+                .map(row -> Money.of(row.get("balance", BigDecimal.class)))
+                .all();
+    }
+
+    Mono<Long> insertAccount(Long customerId, Money balance) {
+        return accountIds.next().flatMap(id -> databaseClient
+                .sql("INSERT INTO accounts(id, customer_id, balance) VALUES (:id, :customerId, :balance)")
+                .bind("id", id)
+                .bind("customerId", customerId)
+                .bind("balance", balance.toBigDecimal())
+                .then()
+                .thenReturn(id));
+    }
+
+    // Only succeeds while the balance covers the amount. Emits the number of rows updated.
+    Mono<Long> debit(Long id, Money amount) {
+        return databaseClient.sql("UPDATE accounts SET balance = balance - :amount WHERE id = :id AND balance >= :amount")
+                .bind("id", id)
+                .bind("amount", amount.toBigDecimal())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<Long> credit(Long id, Money amount) {
+        return databaseClient.sql("UPDATE accounts SET balance = balance + :amount WHERE id = :id")
+                .bind("id", id)
+                .bind("amount", amount.toBigDecimal())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    Mono<Void> insertTransaction(Long senderAccountId, Long sendingCustomerId, Long receiverAccountId,
+            Long receivingCustomerId, Money amount) {
+        return transactionIds.next().flatMap(id -> databaseClient
+                .sql("INSERT INTO transactions(id, sender_account_id, sender_customer_id, receiver_account_id, "
+                        + "receiver_customer_id, amount) VALUES (:id, :sender, :sendingCustomer, :receiver, "
+                        + ":receivingCustomer, :amount)")
+                .bind("id", id)
+                .bind("sender", senderAccountId)
+                .bind("sendingCustomer", sendingCustomerId)
+                .bind("receiver", receiverAccountId)
+                .bind("receivingCustomer", receivingCustomerId)
+                .bind("amount", amount.toBigDecimal())
+                .then());
+    }
+
+    // Every transaction the customer sent or received, oldest first, as the rows arrive.
+    Flux<String> streamTransactionDetails(Long customerId) {
+        return databaseClient.sql("SELECT s.name AS sender_name, t.amount, r.name AS receiver_name FROM transactions t "
+                + "JOIN customers s ON s.id = t.sender_customer_id JOIN customers r ON r.id = t.receiver_customer_id "
+                + "WHERE t.sender_account_id IN (SELECT a.id FROM accounts a WHERE a.customer_id = :id) "
+                + "OR t.receiver_account_id IN (SELECT a.id FROM accounts a WHERE a.customer_id = :id) "
+                + "ORDER BY t.id")
+                .bind("id", customerId)
+                .map(ReactiveBankRepository::transactionDetails)
+                .all();
+    }
+
+    /**
+     * At most limit transactions of the customer with an id greater than afterId,
+     * oldest first. Each side of each account is one range scan of its
+     * (account, id) index that stops at the limit, the same plan
+     * TransactionHistoryService uses.
+     */
+    Flux<HistoryRow> findHistoryAfter(Long customerId, long afterId, int limit) {
+        return databaseClient.sql("SELECT id FROM accounts WHERE customer_id = :id")
+                .bind("id", customerId)
+                .map(row -> row.get("id", Long.class))
+                .all()
+                .collectList()
+                .flatMapMany(accountIds -> accountIds.isEmpty() ? Flux.empty()
+                        : findHistoryAfter(accountIds, afterId, limit));
+    }
+
+    private Flux<HistoryRow> findHistoryAfter(List<Long> accountIds, long afterId, int limit) {
+        String side = "(SELECT t.id, t.sender_customer_id, t.amount, t.receiver_customer_id FROM transactions t "
+                + "WHERE t.%1$s = :account%2$d AND t.id > :afterId ORDER BY t.%1$s, t.id LIMIT :limit)";
+        StringJoiner sides = new StringJoiner(" UNION ");
+        for (int i = 0; i < accountIds.size(); i++) {
+            sides.add(String.format(side, "sender_account_id", i));
+            sides.add(String.format(side, "receiver_account_id", i));
+        }
+        GenericExecuteSpec spec = databaseClient.sql("SELECT h.id, s.name AS sender_name, h.amount, "
+                + "r.name AS receiver_name FROM (" + sides + ") h JOIN customers s ON s.id = h.sender_customer_id "
+                + "JOIN customers r ON r.id = h.receiver_customer_id ORDER BY h.id LIMIT :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit);
+        for (int i = 0; i < accountIds.size(); i++) {
+            spec = spec.bind("account" + i, accountIds.get(i));
+        }
+        return spec.map(row -> new HistoryRow(row.get("id", Long.class), transactionDetails(row))).all();
+    }
+
+    // Rendered the way TransactionDetails renders them for the servlet application.
+    private static String transactionDetails(Readable row) {
+        return TransactionDetails.format(row.get("sender_name", String.class),
+                Money.of(row.get("amount", BigDecimal.class)), row.get("receiver_name", String.class));
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.demo.Reactive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import com.demo.Bank.Money;
+import com.demo.Reactive.ReactiveBankRepository.AccountOwner;
+import com.demo.Reactive.ReactiveBankRepository.CustomerName;
+import com.demo.Transaction.TransactionRequest;
+import com.demo.Transaction.TransferStatus;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Validates and applies a transfer in one R2DBC transaction, with the same
+ * checks, in the same order, as TransferValidator and TransferService.
+ */
+@Profile(ReactiveBankApplication.PROFILE)
+@Service
+class ReactiveTransferService {
+
+    private final ReactiveBankRepository repository;
+    private final TransactionalOperator transactionalOperator;
+
+    ReactiveTransferService(ReactiveBankRepository repository, TransactionalOperator transactionalOperator) {
+        this.repository = repository;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    /**
+     * Returns the first validation failure, INSUFFICIENT_FUNDS, or COMPLETED.
+     * Callers hold the account locks of both accounts, so no other transfer waits
+     * on this one's row locks.
+     *
+     * @param request
+     * @return
+     */
+    Mono<TransferStatus> transfer(TransactionRequest request) {
+        Mono<Map<Long, String>> names = repository
+                .findCustomerNames(ids(request.getSending_customer_id(), request.getReceiving_customer_id()))
+                .collectMap(CustomerName::id, CustomerName::name);
+        Mono<Map<Long, Long>> owners = repository
+                .findAccountOwners(ids(request.getSender_account_id(), request.getReceiver_account_id()))
+                .collectMap(AccountOwner::id, AccountOwner::customerId);
+
+        // one statement at a time, they share the transaction's connection
+        return names.flatMap(customerNames -> owners.flatMap(accountOwners -> {
+            TransferStatus status = validate(request, customerNames, accountOwners);
+            if (status != TransferStatus.VALID) {
+                return Mono.just(status);
+            }
+            return apply(request);
+        })).as(transactionalOperator::transactional);
+    }
+
+    private static TransferStatus validate(TransactionRequest request, Map<Long, String> names,
+            Map<Long, Long> owners) {
+        if (!names.containsKey(request.getReceiving_customer_id())) {
+            return TransferStatus.BAD_RECEIVER_ID;
+        }
+        if (!names.containsKey(request.getSending_customer_id())) {
+            return TransferStatus.BAD_SENDER_ID;
+        }
+
+        Long senderOwner = owners.get(request.getSender_account_id());
+        if (senderOwner == null) {
+            return TransferStatus.BAD_SENDER_ACCOUNT_ID;
+        }
+
+        Long receiverOwner = owners.get(request.getReceiver_account_id());
+        if (receiverOwner == null) {
+            return TransferStatus.BAD_RECEIVER_ACCOUNT_ID;
+        }
+
+        if (!Objects.equals(senderOwner, request.getSending_customer_id())) {
+            return TransferStatus.BAD_OWNER_SENDER;
+        }
+
+        if (!Objects.equals(receiverOwner, request.getReceiving_customer_id())) {
+            return TransferStatus.BAD_OWNER_RECEIVER;
+        }
+
+        if (request.getAmount() == null || !request.getAmount().isPositive()) {
+            return TransferStatus.BAD_AMOUNT;
+        }
+
+        return TransferStatus.VALID;
+    }
+
+    private Mono<TransferStatus> apply(TransactionRequest request) {
+        Money amount = request.getAmount();
+        return repository.debit(request.getSender_account_id(), amount).flatMap(debited -> {
+            if (debited == 0) {
+                return Mono.just(TransferStatus.INSUFFICIENT_FUNDS);
+            }
+            return repository.credit(request.getReceiver_account_id(), amount)
+                    .flatMap(credited -> credited == 0
+                            // rolls back the debit above
+                            ? Mono.error(new IllegalStateException("No account found with that id"))
+                            : repository.insertTransaction(request.getSender_account_id(),
+                                    request.getSending_customer_id(), request.getReceiver_account_id(),
+                                    request.getReceiving_customer_id(), amount)
+                                    .thenReturn(TransferStatus.COMPLETED));
+        });
+    }
+
+    // IN (:ids) needs at least one value, and null ids never match anything.
+    private static List<Long> ids(Long first, Long second) {
+        List<Long> ids = new ArrayList<>(2);
+        ids.add(first == null ? -1L : first);
+        ids.add(second == null ? -1L : second);
+        return ids;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+
+import com.demo.Bank.AccountOwnerIndex;
+import com.demo.Bank.BankAccount;
+import com.demo.Bank.BankAccountService;
+import com.demo.Bank.CreateAccountRequest;
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRequest;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest
+class AccountOwnerIndexTests {
+
+	@Autowired
+	AccountOwnerIndex accountOwnerIndex;
+
+	@Autowired
+	BankAccountService bankAccountService;
+
+	@Autowired
+	BankController bankController;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+    // Seeded accounts, new accounts and unknown ids
+    @Test
+    void testOwnersOfSeededAndNewAccounts() {
+		assertEquals(1, accountOwnerIndex.ownerOf(Long.valueOf(2)));
+		assertEquals(5, accountOwnerIndex.ownerOf(Long.valueOf(6)));
+		assertEquals(AccountOwnerIndex.NONE, accountOwnerIndex.ownerOf(Long.valueOf(999)));
+		assertEquals(AccountOwnerIndex.NONE, accountOwnerIndex.ownerOf((Long) null));
+
+		BankAccount account = bankAccountService.createAccount(new CreateAccountRequest(Long.valueOf(3),
+				Money.of("10")));
+		int size = accountOwnerIndex.size();
+		assertEquals(3, accountOwnerIndex.ownerOf(account.getId()));
+		// added on commit, not by a lookup
+		assertEquals(size, accountOwnerIndex.size());
+	}
+
+    // Accounts written around the service are found in the database once, then indexed
+    @Test
+    void testAccountsInsertedDirectlyAreFound() {
+		jdbcTemplate.update("INSERT INTO customers(id, name) VALUES (1000, 'Ida Quinn')");
+		jdbcTemplate.update("INSERT INTO accounts(id, customer_id, balance) VALUES (1000, 1000, 100)");
+		jdbcTemplate.update("INSERT INTO accounts(id, customer_id, balance) VALUES (1001, 1000, 0)");
+		int size = accountOwnerIndex.size();
+
+		// ids above the Integer cache, which a boxed comparison would get wrong
+		assertEquals(List.of("Transfer successful"), bankController.transferBetweenAccountsAndRecordTransaction(
+				new TransactionRequest(Long.valueOf(1000), Long.valueOf(1000), Long.valueOf(1001),
+						Long.valueOf(1000), Money.of("40")), null)
+				.getBody());
+		assertEquals(size + 2, accountOwnerIndex.size());
+		assertEquals(List.of("Sending bank account does not belong to sending customer"),
+				bankController.transferBetweenAccountsAndRecordTransaction(new TransactionRequest(
+						Long.valueOf(1000), Long.valueOf(1), Long.valueOf(1001), Long.valueOf(1000),
+						Money.of("1")), null)
+						.getBody());
+	}
+
+    // The table grows past its initial capacity without losing entries
+    @Test
+    void testGrowsWithoutLosingEntries() {
+		for (long account = 1_000_000; account < 1_010_000; account++) {
+			accountOwnerIndex.put(account, account / 2);
+		}
+		for (long account = 1_000_000; account < 1_010_000; account++) {
+			assertEquals(account / 2, accountOwnerIndex.ownerOf(account));
+		}
+		assertEquals(2, accountOwnerIndex.ownerOf(Long.valueOf(3)));
+	}
+
+}
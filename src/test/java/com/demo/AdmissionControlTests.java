@@ -0,0 +1,228 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+
+import com.demo.Admission.AdmissionControl;
+import com.demo.Idempotency.IdempotencyStore;
+import com.demo.Bank.BalanceReadModel;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRepository;
+import com.demo.Transaction.TransactionRequest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = { "bank.admission.enabled=true", "bank.admission.transfers-per-second=50",
+		"bank.admission.burst=10", "bank.admission.max-concurrent-transfers=16",
+		"spring.datasource.hikari.maximum-pool-size=2" })
+class AdmissionControlTests {
+
+	@Autowired
+	BankController bankController;
+
+	@Autowired
+	AdmissionControl admissionControl;
+
+	@Autowired
+	TransactionRepository transactionRepository;
+
+	@Autowired
+	BankAccountRepository bankAccountRepository;
+
+	@Autowired
+	BalanceReadModel balanceReadModel;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	static final String TOO_MANY_TRANSFERS = "Too many transfers, retry later";
+
+    // A customer past its burst is turned away without a transfer, others are not,
+    // and a retry of a transfer that already ran gets its response all the same
+    @Test
+    void testCustomerOverRateGets429() {
+		long transactions = transactionRepository.count();
+		TransactionRequest keyed = new TransactionRequest(Long.valueOf(1), Long.valueOf(1), Long.valueOf(3),
+				Long.valueOf(2), Money.of("0.01"));
+		assertEquals(HttpStatus.OK,
+				bankController.transferBetweenAccountsAndRecordTransaction(keyed, "keyed").getStatusCode());
+		int admitted = 1;
+		ResponseEntity<List<String>> response;
+		while ((response = transfer(1, 1, 3, 2, "0.01")).getStatusCode() == HttpStatus.OK) {
+			admitted++;
+		}
+
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+		assertEquals(List.of(TOO_MANY_TRANSFERS), response.getBody());
+		assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		// the burst, plus what refilled while the loop ran
+		assertTrue(admitted >= 10, "admitted " + admitted);
+		assertEquals(transactions + admitted, transactionRepository.count());
+
+		ResponseEntity<List<String>> replayed = bankController.transferBetweenAccountsAndRecordTransaction(keyed,
+				"keyed");
+		assertEquals(HttpStatus.OK, replayed.getStatusCode());
+		assertEquals("true", replayed.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+		// a turned away transfer is not kept, so its retry may run later, keys are
+		// tried until one is turned away as the bucket refills in the meantime
+		String throttled;
+		int attempt = 0;
+		do {
+			throttled = "throttled-" + attempt++;
+			response = bankController.transferBetweenAccountsAndRecordTransaction(keyed, throttled);
+			if (response.getStatusCode() == HttpStatus.OK) {
+				admitted++;
+			}
+		} while (response.getStatusCode() == HttpStatus.OK);
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+		response = bankController.transferBetweenAccountsAndRecordTransaction(keyed, throttled);
+		assertNotEquals("true", response.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+		if (response.getStatusCode() == HttpStatus.OK) {
+			admitted++;
+		}
+
+		assertEquals(HttpStatus.OK, transfer(6, 5, 4, 3, "1").getStatusCode());
+		// a batch counts every item against its sender, whose bucket is emptied again first
+		while (transfer(1, 1, 3, 2, "0.01").getStatusCode() == HttpStatus.OK) {
+			admitted++;
+		}
+		List<TransactionRequest> batch = new ArrayList<>();
+		batch.add(new TransactionRequest(Long.valueOf(6), Long.valueOf(5), Long.valueOf(4), Long.valueOf(3),
+				Money.of("1")));
+		for (int i = 0; i < 5; i++) {
+			batch.add(new TransactionRequest(Long.valueOf(1), Long.valueOf(1), Long.valueOf(3), Long.valueOf(2),
+					Money.of("0.01")));
+		}
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+				bankController.transferBatchBetweenAccountsAndRecordTransactions(batch).getStatusCode());
+		assertEquals(transactions + admitted + 1, transactionRepository.count());
+	}
+
+    // Once as many transfers run as allowed, the next one is turned away until one finishes
+    @Test
+    void testConcurrentTransfersAreLimited() {
+		for (int i = 0; i < 16; i++) {
+			assertEquals(AdmissionControl.ADMITTED,
+					admissionControl.admit(Collections.singletonMap(Long.valueOf(100 + i), 1)));
+		}
+		ResponseEntity<List<String>> response = transfer(6, 5, 4, 3, "1");
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+		assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+		admissionControl.done();
+		assertEquals(HttpStatus.OK, transfer(6, 5, 4, 3, "1").getStatusCode());
+		assertEquals(AdmissionControl.ADMITTED, admissionControl.admit(Map.of(Long.valueOf(5), 2)));
+	}
+
+    // A batch larger than the burst keeps its customer's bucket until it is full
+    // again, so the next one is not let through by a bucket dropped and made anew
+    @Test
+    void testBucketOutlivesLargeBatch() throws Exception {
+		Long customer = Long.valueOf(200);
+		// 100 transfers at 50 a second, the bucket is full again in two seconds
+		assertEquals(AdmissionControl.ADMITTED, admissionControl.admit(Map.of(customer, 100)));
+		admissionControl.done();
+
+		// longer than a bucket is left unused before it may be dropped
+		Thread.sleep(1100);
+		assertTrue(admissionControl.admit(Map.of(customer, 100)) >= 1);
+		assertEquals(1.0, meterRegistry.get("bank.admission.requests").tag("outcome", "throttled")
+				.functionCounter().count());
+	}
+
+    // Judah sends 20 transfers a second, alone and then next to Arisha sending from
+    // eight threads as fast as her answers come back, over a pool of two database
+    // connections. Arisha is held to her rate, every transfer turned away is hers,
+    // and the p99 of his transfers stays close to what it was alone.
+    @Test
+    void testWellBehavedCustomerIsNotHurtByAbusiveNeighbour() throws Exception {
+		paced(20);
+		long alone = p99(paced(100));
+
+		ConcurrentTransfers abuse = new ConcurrentTransfers(bankController, bankAccountRepository,
+				transactionRepository, balanceReadModel);
+		AtomicBoolean abusing = new AtomicBoolean(true);
+		abuse.start(8, abusing::get, () -> {
+			// a client waits a moment after its answer before sending again
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new TransactionRequest(Long.valueOf(1), Long.valueOf(1), Long.valueOf(3), Long.valueOf(2),
+					Money.of("0.01"));
+		});
+		long abuseStarted = System.nanoTime();
+		long neighboured = p99(paced(100));
+		abusing.set(false);
+		abuse.await();
+		double seconds = (System.nanoTime() - abuseStarted) / 1e9;
+
+		long abusiveRejected = abuse.rejected(TOO_MANY_TRANSFERS);
+		assertTrue(abusiveRejected > abuse.completed(), abuse.completed() + " admitted, " + abusiveRejected
+				+ " rejected");
+		// the burst of 10 plus 50 a second, with a second of slack
+		assertTrue(abuse.completed() <= 10 + 50 * (seconds + 1), abuse.completed() + " admitted");
+		assertEquals(abusiveRejected, outcome("throttled"));
+		assertEquals(0, outcome("overloaded"));
+		assertEquals(abuse.completed() + 220, outcome("admitted"));
+		assertTrue(neighboured <= Math.max(3 * alone, TimeUnit.MILLISECONDS.toNanos(100)),
+				"p99 alone " + alone / 1000 + " us, next to the abusive customer " + neighboured / 1000 + " us");
+
+		// Arisha is told when to come back, Judah still gets through
+		ResponseEntity<List<String>> response = transfer(1, 1, 3, 2, "0.01");
+		while (response.getStatusCode() == HttpStatus.OK) {
+			response = transfer(1, 1, 3, 2, "0.01");
+		}
+		assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		assertEquals(HttpStatus.OK, transfer(6, 5, 4, 3, "1").getStatusCode());
+	}
+
+	// Judah Parham sends 1 to Rhonda Church every 50 ms and the latency of each is recorded
+	private List<Long> paced(int transfers) throws InterruptedException {
+		List<Long> latencies = new ArrayList<>();
+		for (int i = 0; i < transfers; i++) {
+			long start = System.nanoTime();
+			assertEquals(HttpStatus.OK, transfer(6, 5, 4, 3, "1").getStatusCode());
+			latencies.add(System.nanoTime() - start);
+			Thread.sleep(50);
+		}
+		return latencies;
+	}
+
+	private static long p99(List<Long> latencies) {
+		List<Long> sorted = new ArrayList<>(latencies);
+		Collections.sort(sorted);
+		return sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1);
+	}
+
+	private long outcome(String outcome) {
+		return (long) meterRegistry.get("bank.admission.requests").tag("outcome", outcome).functionCounter().count();
+	}
+
+	private ResponseEntity<List<String>> transfer(long senderAccount, long sendingCustomer, long receiverAccount,
+			long receivingCustomer, String amount) {
+		return bankController.transferBetweenAccountsAndRecordTransaction(new TransactionRequest(senderAccount,
+				sendingCustomer, receiverAccount, receivingCustomer, Money.of(amount)), null);
+	}
+
+}
@@ -0,0 +1,232 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.demo.Bank.BalanceChange;
+import com.demo.Bank.BalanceReadModel;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.CustomerBalanceSummary;
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRequest;
+import com.demo.Transaction.TransferService;
+import com.demo.Transaction.TransferStatus;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = "bank.balance-read-model.max-size=100")
+class BalanceReadModelTests {
+
+	@Autowired
+	BalanceReadModel balanceReadModel;
+
+	@Autowired
+	TransferService transferService;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	BankAccountRepository bankAccountRepository;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	// a permit for every balance query that has read its rows
+	static Semaphore queried;
+
+	// holds every balance query until counted down
+	static CountDownLatch release;
+
+	@BeforeEach
+	void holdQueries() {
+		queried = new Semaphore(0);
+		release = new CountDownLatch(1);
+	}
+
+    // Every balance query reads its rows, then waits for the test to release it
+    @TestConfiguration
+    static class SlowBalanceQueries {
+
+		@Bean
+		static BeanPostProcessor slowBalanceQueries() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (!(bean instanceof BankAccountRepository repository)) {
+						return bean;
+					}
+					BankAccountRepository slow = mock(BankAccountRepository.class,
+							AdditionalAnswers.delegatesTo(repository));
+					doAnswer(invocation -> {
+						Object rows = repository.findAccountBalancesByCustomerId(invocation.getArgument(0));
+						queried.release();
+						assertTrue(release.await(30, TimeUnit.SECONDS));
+						return rows;
+					}).when(slow).findAccountBalancesByCustomerId(any());
+					return slow;
+				}
+			};
+		}
+
+	}
+
+    // 16 concurrent reads of a customer missing from the read model run one query
+    @Test
+    void testConcurrentLoadsShareOneQuery() throws Exception {
+		int threads = 16;
+		Long judah = Long.valueOf(5);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<CustomerBalanceSummary>> results = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(() -> {
+				start.await();
+				return balanceReadModel.get(judah);
+			}));
+		}
+		start.countDown();
+
+		// every other read joins while the first query is held
+		assertTrue(queried.tryAcquire(30, TimeUnit.SECONDS));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (meterRegistry.get("bank.balance.loads").tag("flight", "joined").functionCounter().count() < threads - 1
+				&& System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+
+		for (Future<CustomerBalanceSummary> result : results) {
+			assertEquals(Money.of("8999.00"), result.get().getTotal());
+		}
+		executor.shutdown();
+
+		verify(bankAccountRepository, times(1)).findAccountBalancesByCustomerId(judah);
+		assertEquals(1.0, meterRegistry.get("bank.balance.loads").tag("flight", "queried").functionCounter().count());
+		assertEquals(threads - 1,
+				meterRegistry.get("bank.balance.loads").tag("flight", "joined").functionCounter().count());
+	}
+
+    // A read that starts after a transfer committed does not join a query that was
+    // already running before the transfer, and gets the new balance
+    @Test
+    void testLoadStartedAfterTransferDoesNotJoinOlderQuery() throws Exception {
+		Long georgina = Long.valueOf(4);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		Future<CustomerBalanceSummary> before = executor.submit(() -> balanceReadModel.get(georgina));
+		assertTrue(queried.tryAcquire(30, TimeUnit.SECONDS));
+
+		// Georgina Hazel sends 20 to Judah Parham while that query is held
+		assertEquals(TransferStatus.COMPLETED, transferService.transfer(new TransactionRequest(Long.valueOf(5),
+				georgina, Long.valueOf(6), Long.valueOf(5), Money.of("20"))));
+
+		// the read after the transfer runs a query of its own, held as well
+		Future<CustomerBalanceSummary> after = executor.submit(() -> balanceReadModel.get(georgina));
+		assertTrue(queried.tryAcquire(30, TimeUnit.SECONDS));
+		release.countDown();
+
+		assertEquals(Money.of("60.00"), after.get().getTotal());
+		assertEquals(Money.of("80.00"), before.get().getTotal());
+		executor.shutdown();
+
+		assertEquals(Money.of("60.00"), balanceReadModel.get(georgina).getTotal());
+		assertEquals(0.0, meterRegistry.get("bank.balance.loads").tag("flight", "joined").functionCounter().count());
+	}
+
+    // Write counters stay within max-size, but not while a write is in flight, and
+    // a customer whose counters were evicted never gets one of its old versions back
+    @Test
+    void testWriteCountersAreBounded() throws Exception {
+		Long arisha = Long.valueOf(1);
+		Long judah = Long.valueOf(5);
+		write(arisha);
+		long written = balanceReadModel.version(arisha);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			balanceReadModel.record(List.of(new BalanceChange(judah, Long.valueOf(6), Money.of("1"))));
+			assertDoesNotThrow(() -> executor.submit(() -> {
+				for (long customerId = 1000; customerId < 2000; customerId++) {
+					write(customerId);
+				}
+			}).get());
+			assertEquals(-1, balanceReadModel.version(judah));
+		});
+		executor.shutdown();
+
+		assertTrue(balanceReadModel.version(judah) >= 0);
+		assertTrue(balanceReadModel.version(arisha) >= written);
+		write(arisha);
+		assertTrue(balanceReadModel.version(arisha) > written);
+
+		// eviction runs in the background
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (meterRegistry.get("bank.balance.write-counters").gauge().value() > 100
+				&& System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(meterRegistry.get("bank.balance.write-counters").gauge().value() <= 100);
+	}
+
+    // A summary is read again a ttl after it was loaded, even if a local transfer
+    // updated it since, as transfers on other instances never reach it
+    @Test
+    void testSummaryExpiresSinceLoad() throws Exception {
+		release.countDown();
+		Long judah = Long.valueOf(5);
+		BalanceReadModel readModel = new BalanceReadModel(bankAccountRepository, 100, Duration.ofSeconds(1));
+
+		assertEquals(Money.of("8999.00"), readModel.get(judah).getTotal());
+		assertTrue(queried.tryAcquire());
+		Thread.sleep(600);
+
+		// recorded here only, the accounts table keeps 8999
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> readModel
+				.record(List.of(new BalanceChange(judah, Long.valueOf(6), Money.of("1")))));
+		assertEquals(Money.of("9000.00"), readModel.get(judah).getTotal());
+		assertEquals(0, queried.availablePermits());
+		Thread.sleep(600);
+
+		assertEquals(Money.of("8999.00"), readModel.get(judah).getTotal());
+		assertEquals(1, queried.availablePermits());
+	}
+
+	// One balance change of the customer, in a transaction of its own
+	private void write(Long customerId) {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> balanceReadModel
+				.record(List.of(new BalanceChange(customerId, customerId, Money.of("1")))));
+	}
+
+}
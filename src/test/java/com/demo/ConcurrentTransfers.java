@@ -0,0 +1,163 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.demo.Bank.BalanceReadModel;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRepository;
+import com.demo.Transaction.TransactionRequest;
+
+/**
+ * Transfers sent through the BankController from many threads at once, and
+ * the checks every concurrency test makes once they are done: money only ever
+ * moves between accounts, so the total is unchanged and no account is negative,
+ * every completed transfer left one transaction, and the balance read model
+ * matches the database. Tests add the assertions of their own feature.
+ */
+class ConcurrentTransfers {
+
+	// account id and owning customer id, as seeded by data.sql
+	static final long[][] ACCOUNTS = { { 1, 1 }, { 2, 1 }, { 3, 2 }, { 4, 3 }, { 5, 4 }, { 6, 5 } };
+
+	static final String INSUFFICIENT_FUNDS = "Insufficient funds";
+
+	private final BankController bankController;
+	private final BankAccountRepository bankAccountRepository;
+	private final TransactionRepository transactionRepository;
+	private final BalanceReadModel balanceReadModel;
+
+	private final Money startingTotal;
+	private final long startingTransactions;
+
+	private final AtomicInteger completed = new AtomicInteger();
+	private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+
+	private ExecutorService executor;
+	private final List<Future<?>> senders = new ArrayList<>();
+
+	ConcurrentTransfers(BankController bankController, BankAccountRepository bankAccountRepository,
+			TransactionRepository transactionRepository, BalanceReadModel balanceReadModel) {
+		this.bankController = bankController;
+		this.bankAccountRepository = bankAccountRepository;
+		this.transactionRepository = transactionRepository;
+		this.balanceReadModel = balanceReadModel;
+		this.startingTotal = totalBalance();
+		this.startingTransactions = transactionRepository.count();
+	}
+
+	// Between two random seeded accounts, of up to maxCents.
+	static TransactionRequest random(long maxCents) {
+		return random(ACCOUNTS, ACCOUNTS, maxCents);
+	}
+
+	static TransactionRequest random(long[][] senders, long[][] receivers, long maxCents) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long[] sender = senders[random.nextInt(senders.length)];
+		long[] receiver = receivers[random.nextInt(receivers.length)];
+		return new TransactionRequest(sender[0], sender[1], receiver[0], receiver[1],
+				Money.ofCents(random.nextLong(1, maxCents)));
+	}
+
+	/**
+	 * Send the given number of transfers from the given number of threads and
+	 * run alongside over and over on the calling thread until all of them are
+	 * answered.
+	 */
+	void run(int transfers, int threads, Supplier<TransactionRequest> next, Runnable alongside) throws Exception {
+		AtomicInteger remaining = new AtomicInteger(transfers);
+		start(threads, () -> remaining.getAndDecrement() > 0, next);
+		while (!senders.stream().allMatch(Future::isDone)) {
+			alongside.run();
+		}
+		await();
+	}
+
+	void run(int transfers, int threads, Supplier<TransactionRequest> next) throws Exception {
+		AtomicInteger remaining = new AtomicInteger(transfers);
+		start(threads, () -> remaining.getAndDecrement() > 0, next);
+		await();
+	}
+
+	// Each thread sends the next transfer once it has the answer to its last, while more says so.
+	void start(int threads, BooleanSupplier more, Supplier<TransactionRequest> next) {
+		executor = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			senders.add(executor.submit(() -> {
+				while (more.getAsBoolean()) {
+					ResponseEntity<List<String>> response = bankController
+							.transferBetweenAccountsAndRecordTransaction(next.get(), null);
+					if (response.getStatusCode() == HttpStatus.OK) {
+						completed.incrementAndGet();
+					} else {
+						rejected.computeIfAbsent(response.getBody().get(0), message -> new LongAdder()).increment();
+					}
+				}
+				return null;
+			}));
+		}
+	}
+
+	// Waits for the senders, and fails with the first exception one of them threw.
+	void await() throws Exception {
+		for (Future<?> sender : senders) {
+			sender.get();
+		}
+		executor.shutdown();
+	}
+
+	int completed() {
+		return completed.get();
+	}
+
+	long rejected(String message) {
+		LongAdder count = rejected.get(message);
+		return count == null ? 0 : count.sum();
+	}
+
+	/**
+	 * Checks what must hold after any mix of transfers, and that every transfer
+	 * that did not complete was turned away with one of the given messages.
+	 */
+	void assertConserved(String... rejections) {
+		assertTrue(Set.of(rejections).containsAll(rejected.keySet()), "rejected with " + rejected.keySet());
+		assertEquals(0, startingTotal.compareTo(totalBalance()));
+		for (long customerId = 1; customerId <= 5; customerId++) {
+			List<Money> balances = bankAccountRepository.getBalances(customerId);
+			for (Money balance : balances) {
+				assertFalse(balance.isNegative());
+			}
+			assertEquals(balances, List.copyOf(balanceReadModel.get(customerId).getBalances().values()));
+		}
+		assertEquals(startingTransactions + completed.get(), transactionRepository.count());
+	}
+
+	// Including the shards of hot accounts.
+	private Money totalBalance() {
+		Money total = Money.ZERO;
+		for (long customerId = 1; customerId <= 5; customerId++) {
+			for (Money balance : bankAccountRepository.getBalances(customerId)) {
+				total = total.plus(balance);
+			}
+		}
+		return total;
+	}
+
+}
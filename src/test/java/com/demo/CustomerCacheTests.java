@@ -0,0 +1,157 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+
+import com.demo.Customer.Customer;
+import com.demo.Customer.CustomerCache;
+import com.demo.Customer.CustomerRepository;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = "bank.customer-cache.max-size=2")
+class CustomerCacheTests {
+
+	@Autowired
+	CustomerCache customerCache;
+
+	@Autowired
+	CustomerRepository customerRepository;
+
+	// a permit for every bulk query that has read its rows while held
+	static final Semaphore queried = new Semaphore(0);
+
+	// holds every bulk query until counted down, when set
+	static volatile CountDownLatch release;
+
+    // Bulk customer queries read their rows, then wait while a test holds them
+    @TestConfiguration
+    static class HeldBulkQueries {
+
+		@Bean
+		static BeanPostProcessor heldBulkQueries() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (!(bean instanceof CustomerRepository repository)) {
+						return bean;
+					}
+					CustomerRepository held = mock(CustomerRepository.class,
+							AdditionalAnswers.delegatesTo(repository));
+					doAnswer(invocation -> {
+						Object rows = repository.findAllById(invocation.getArgument(0));
+						CountDownLatch holding = release;
+						if (holding != null) {
+							queried.release();
+							assertTrue(holding.await(30, TimeUnit.SECONDS));
+						}
+						return rows;
+					}).when(held).findAllById(any());
+					return held;
+				}
+			};
+		}
+
+	}
+
+    // Repeated lookups are served from the cache and counted
+    @Test
+    void testLookupsAreCachedAndCounted() {
+		assertEquals("Arisha Barron", customerCache.getName(Long.valueOf(1)));
+		assertEquals("Arisha Barron", customerCache.getName(Long.valueOf(1)));
+		assertTrue(customerCache.exists(Long.valueOf(1)));
+
+		assertEquals(1, customerCache.missCount());
+		assertEquals(2, customerCache.hitCount());
+
+		// unknown customers are not cached
+		assertFalse(customerCache.exists(Long.valueOf(999)));
+		assertFalse(customerCache.exists(Long.valueOf(999)));
+		assertFalse(customerCache.exists(null));
+		assertEquals(3, customerCache.missCount());
+	}
+
+    // The cache never holds more than its maximum size
+    @Test
+    void testCacheIsBounded() {
+		Map<Long, String> names = customerCache.getNames(List.of(1L, 2L, 3L, 4L, 5L, 999L));
+		assertEquals(5, names.size());
+		assertEquals("Judah Parham", names.get(5L));
+
+		customerCache.cleanUp();
+		assertTrue(customerCache.size() <= 2);
+		assertTrue(customerCache.evictionCount() >= 3);
+	}
+
+    // Writing a customer through JPA drops the cached name
+    @Test
+    void testCustomerWriteInvalidatesCache() {
+		assertEquals("Rhonda Church", customerCache.getName(Long.valueOf(3)));
+
+		Customer customer = customerRepository.findById(Long.valueOf(3)).get();
+		customer.setName("Rhonda Parham");
+		customerRepository.save(customer);
+
+		assertEquals("Rhonda Parham", customerCache.getName(Long.valueOf(3)));
+
+		// other customers are still cached after the first lookup
+		long hits = customerCache.hitCount();
+		assertEquals("Arisha Barron", customerCache.getName(Long.valueOf(1)));
+		assertEquals("Arisha Barron", customerCache.getName(Long.valueOf(1)));
+		assertEquals(hits + 1, customerCache.hitCount());
+	}
+
+    // A rename committed while a bulk lookup is reading the old name does not
+    // leave the old name cached
+    @Test
+    void testBulkLookupRacingWriteDoesNotCacheOldName() throws Exception {
+		release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Map<Long, String>> racing = executor.submit(() -> customerCache.getNames(List.of(3L, 4L)));
+			assertTrue(queried.tryAcquire(30, TimeUnit.SECONDS));
+
+			Customer customer = customerRepository.findById(Long.valueOf(3)).get();
+			customer.setName("Rhonda Parham");
+			customerRepository.save(customer);
+			release.countDown();
+
+			assertEquals("Rhonda Church", racing.get().get(3L));
+		} finally {
+			release.countDown();
+			release = null;
+			executor.shutdown();
+		}
+
+		assertEquals("Rhonda Parham", customerCache.getName(Long.valueOf(3)));
+		assertEquals("Rhonda Parham", customerCache.getNames(List.of(3L)).get(3L));
+		// the customer not written is cached
+		long hits = customerCache.hitCount();
+		assertEquals("Georgina Hazel", customerCache.getName(Long.valueOf(4)));
+		assertEquals(hits + 1, customerCache.hitCount());
+	}
+
+}
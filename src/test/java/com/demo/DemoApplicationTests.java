@@ -2,8 +2,8 @@ package com.demo;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,15 +20,19 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.jdbc.Sql;
 
+import com.demo.Bank.AccountOnboardingService;
 import com.demo.Bank.BankAccount;
 import com.demo.Bank.BankAccountRepository;
 import com.demo.Bank.CreateAccountRequest;
+import com.demo.Bank.Money;
+import com.demo.Customer.Customer;
 import com.demo.Customer.CustomerRepository;
+import com.demo.Transaction.Transaction;
 import com.demo.Transaction.TransactionRepository;
 import com.demo.Transaction.TransactionRequest;
 
-//This sql file contains pre-loaded transactions, accounts, and customers.
-@Sql(scripts = "classpath:/data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 class DemoApplicationTests {
@@ -78,20 +82,20 @@ class DemoApplicationTests {
 
 		// Getting all balances for Branden should only return one account with a value
 		// of 800
-		List<BigDecimal> startingList = new ArrayList<BigDecimal>();
-		startingList.add(new BigDecimal("800.00"));
+		List<Money> startingList = new ArrayList<Money>();
+		startingList.add(Money.of("800.00"));
 		assertEquals(startingList, bankAccountRepository.getBalances(Long.valueOf(2)));
 
-		CreateAccountRequest request = new CreateAccountRequest(Long.valueOf(2), BigDecimal.valueOf(3434334));
+		CreateAccountRequest request = new CreateAccountRequest(Long.valueOf(2), Money.of("3434334"));
 
 		ResponseEntity<String> response = restTemplate.postForEntity("/api/createBankAccount", request, String.class);
 
 		assertEquals(HttpStatus.OK, response.getStatusCode());
 		assertEquals("[\"Account successfully created\"]", response.getBody());
 
-		List<BigDecimal> expectedResult = new ArrayList<BigDecimal>();
-		expectedResult.add(new BigDecimal("800.00"));
-		expectedResult.add(new BigDecimal("3434334.00"));
+		List<Money> expectedResult = new ArrayList<Money>();
+		expectedResult.add(Money.of("800.00"));
+		expectedResult.add(Money.of("3434334.00"));
 
 		assertEquals(expectedResult, bankAccountRepository.getBalances(Long.valueOf(2)));
 	}
@@ -140,7 +144,7 @@ class DemoApplicationTests {
 		assertNotNull(bankAccountRepository);
 		assertNotNull(transactionRepository);
 
-		CreateAccountRequest request = new CreateAccountRequest(Long.valueOf(999), BigDecimal.valueOf(3434334));
+		CreateAccountRequest request = new CreateAccountRequest(Long.valueOf(999), Money.of("3434334"));
 		ResponseEntity<String> response = restTemplate.postForEntity("/api/createBankAccount", request, String.class);
 		assertEquals("[\"Invalid customer id\"]", response.getBody().toString());
 	}
@@ -153,7 +157,7 @@ class DemoApplicationTests {
 		assertNotNull(bankAccountRepository);
 		assertNotNull(transactionRepository);
 
-		CreateAccountRequest request = new CreateAccountRequest(Long.valueOf(1), BigDecimal.valueOf(-1));
+		CreateAccountRequest request = new CreateAccountRequest(Long.valueOf(1), Money.of("-1"));
 		ResponseEntity<String> response = restTemplate.postForEntity("/api/createBankAccount", request, String.class);
 		assertEquals("[\"Initial deposit be a number and equal or greater than zero\"]", response.getBody().toString());
 	}
@@ -171,7 +175,7 @@ class DemoApplicationTests {
 		Long sendingBankAccountId = Long.valueOf(5);
 		Long receiverId = Long.valueOf(5);
 		Long receivingBankAccountId = Long.valueOf(6);
-		BigDecimal amount = BigDecimal.valueOf(20);
+		Money amount = Money.of("20");
 
 		TransactionRequest request = new TransactionRequest(sendingBankAccountId, invalidSenderId,
 				receivingBankAccountId, receiverId, amount);
@@ -201,7 +205,7 @@ class DemoApplicationTests {
 		Long sendingBankAccountId = Long.valueOf(5);
 		Long invalidReceiverId = Long.valueOf(999);
 		Long receivingBankAccountId = Long.valueOf(6);
-		BigDecimal amount = BigDecimal.valueOf(20);
+		Money amount = Money.of("20");
 
 		TransactionRequest request = new TransactionRequest(sendingBankAccountId, senderId,
 				receivingBankAccountId, invalidReceiverId, amount);
@@ -233,7 +237,7 @@ class DemoApplicationTests {
 		Long invalidSendingBankAccountId = Long.valueOf(999);// 5
 		Long receiverId = Long.valueOf(5);
 		Long receivingBankAccountId = Long.valueOf(6);
-		BigDecimal amount = BigDecimal.valueOf(20);
+		Money amount = Money.of("20");
 
 		TransactionRequest request = new TransactionRequest(invalidSendingBankAccountId, senderId,
 				receivingBankAccountId, receiverId, amount);
@@ -266,7 +270,7 @@ class DemoApplicationTests {
 		Long sendingBankAccountId = Long.valueOf(5);
 		Long receiverId = Long.valueOf(5);
 		Long invalidReceivingBankAccountId = Long.valueOf(999);
-		BigDecimal amount = BigDecimal.valueOf(20);
+		Money amount = Money.of("20");
 
 		TransactionRequest request = new TransactionRequest(sendingBankAccountId, senderId,
 				invalidReceivingBankAccountId, receiverId, amount);
@@ -299,7 +303,7 @@ class DemoApplicationTests {
 		Long sendingBankAccountId = Long.valueOf(5);
 		Long receiverId = Long.valueOf(5);
 		Long invalidReceivingBankAccountId = Long.valueOf(1);
-		BigDecimal amount = BigDecimal.valueOf(20);
+		Money amount = Money.of("20");
 
 		TransactionRequest request = new TransactionRequest(sendingBankAccountId, senderId,
 				invalidReceivingBankAccountId, receiverId, amount);
@@ -333,7 +337,7 @@ class DemoApplicationTests {
 		Long invalidSendingBankAccountId = Long.valueOf(1);
 		Long receiverId = Long.valueOf(5);
 		Long receivingBankAccountId = Long.valueOf(6);
-		BigDecimal amount = BigDecimal.valueOf(20);
+		Money amount = Money.of("20");
 
 		TransactionRequest request = new TransactionRequest(invalidSendingBankAccountId, senderId,
 				receivingBankAccountId, receiverId, amount);
@@ -353,6 +357,37 @@ class DemoApplicationTests {
 				transferResponse.getBody().toString());
 	}
 
+    // confirms that a missing, zero or negative amount is refused whichever
+    // account is locked first, and moves no money
+    @Test
+    void testTransferWithoutPositiveAmount() {
+		long startingTransactions = transactionRepository.count();
+		// the debit comes first from account 2 to 3, the credit first from 3 to 1
+		List<TransactionRequest> requests = new ArrayList<>();
+		for (Money amount : Arrays.asList(null, Money.ZERO, Money.of("-20"))) {
+			requests.add(new TransactionRequest(Long.valueOf(2), Long.valueOf(1), Long.valueOf(3), Long.valueOf(2),
+					amount));
+			requests.add(new TransactionRequest(Long.valueOf(3), Long.valueOf(2), Long.valueOf(1), Long.valueOf(1),
+					amount));
+		}
+
+		for (TransactionRequest request : requests) {
+			ResponseEntity<String> transferResponse = restTemplate.exchange("/api/transfer", HttpMethod.PUT,
+					new HttpEntity<>(request), String.class);
+			assertEquals(HttpStatus.BAD_REQUEST, transferResponse.getStatusCode());
+			assertEquals("[\"Amount must be greater than zero\"]", transferResponse.getBody());
+		}
+		ResponseEntity<String> batchResponse = restTemplate.postForEntity("/api/transfers/batch",
+				requests.subList(0, 2), String.class);
+		assertEquals("[\"Amount must be greater than zero\",\"Amount must be greater than zero\"]",
+				batchResponse.getBody());
+
+		assertEquals("520.00", bankAccountRepository.findById(Long.valueOf(1)).get().getBalance().toString());
+		assertEquals("5520.00", bankAccountRepository.findById(Long.valueOf(2)).get().getBalance().toString());
+		assertEquals("800.00", bankAccountRepository.findById(Long.valueOf(3)).get().getBalance().toString());
+		assertEquals(startingTransactions, transactionRepository.count());
+	}
+
     // This checks the expected loaded transaction list for a customer
     @Test
     void testGetTransactionDetails() {
@@ -391,7 +426,7 @@ class DemoApplicationTests {
 		Long sendingBankAccountId = Long.valueOf(5);
 		Long receiverId = Long.valueOf(5);
 		Long receivingBankAccountId = Long.valueOf(6);
-		BigDecimal amount = BigDecimal.valueOf(20);
+		Money amount = Money.of("20");
 		Optional<BankAccount> startingBalanceSender = bankAccountRepository.findById(sendingBankAccountId);
 		Optional<BankAccount> startingBalanceReceiver = bankAccountRepository.findById(receivingBankAccountId);
 
@@ -432,14 +467,14 @@ class DemoApplicationTests {
 		assertTrue(senderTransactionDetails.indexOf("FROM Georgina Hazel 20 TO Judah Parham") > 0);
 
 		// confirm the end balance for Judah
-		String expectedEndreceiverBalance = (amount.add(startingBalanceReceiver.get().getBalance())).toString();
+		String expectedEndreceiverBalance = (amount.plus(startingBalanceReceiver.get().getBalance())).toString();
 
 		String actualEndingReceiverBalance = bankAccountRepository.findById(receivingBankAccountId).get().getBalance()
 				.toString();
 		assertEquals(expectedEndreceiverBalance, actualEndingReceiverBalance);
 
 		// confirm the end balance for Georgina
-		String expectedEndSenderBalance = (startingBalanceSender.get().getBalance().subtract(amount)).toString();
+		String expectedEndSenderBalance = (startingBalanceSender.get().getBalance().minus(amount)).toString();
 
 		String actualEndingSenderBalance = bankAccountRepository.findById(sendingBankAccountId).get().getBalance()
 				.toString();
@@ -447,4 +482,284 @@ class DemoApplicationTests {
 
 	}
 
+    /*
+     * A batch of transfers between Georgina and Judah. Items are applied in
+     * order, so the second item fails for funds the first one used up and the
+     * last one can spend money the third one sent back.
+     */
+    @Test
+    void testBatchTransferReportsResultPerItem() {
+		Long georgina = Long.valueOf(4);
+		Long georginaAccount = Long.valueOf(5);
+		Long judah = Long.valueOf(5);
+		Long judahAccount = Long.valueOf(6);
+		long startingTransactions = transactionRepository.count();
+
+		List<TransactionRequest> requests = List.of(
+				new TransactionRequest(georginaAccount, georgina, judahAccount, judah, Money.of("50")),
+				new TransactionRequest(georginaAccount, georgina, judahAccount, judah, Money.of("50")),
+				new TransactionRequest(judahAccount, judah, georginaAccount, georgina, Money.of("100")),
+				new TransactionRequest(georginaAccount, Long.valueOf(999), judahAccount, judah, Money.of("1")),
+				new TransactionRequest(georginaAccount, georgina, judahAccount, judah, Money.of("130")));
+
+		ResponseEntity<String> response = restTemplate.postForEntity("/api/transfers/batch", requests, String.class);
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals("[\"Transfer successful\",\"Insufficient funds\",\"Transfer successful\","
+				+ "\"Invalid sender id\",\"Transfer successful\"]", response.getBody());
+
+		assertEquals("0.00", bankAccountRepository.findById(georginaAccount).get().getBalance().toString());
+		assertEquals("9079.00", bankAccountRepository.findById(judahAccount).get().getBalance().toString());
+		assertEquals(startingTransactions + 3, transactionRepository.count());
+	}
+
+    // Pages through Georgina's two seeded transactions one at a time
+    @Test
+    void testTransactionHistoryKeysetPages() {
+		Long customerId = Long.valueOf(4);
+
+		ResponseEntity<String> firstPage = restTemplate
+				.getForEntity("/api/getCustomerTransactionHistory/" + customerId + "?limit=1", String.class);
+		assertEquals(HttpStatus.OK, firstPage.getStatusCode());
+		assertEquals("[\"FROM Georgina Hazel 20 TO Arisha Barron\"]", firstPage.getBody());
+		String nextAfterId = firstPage.getHeaders().getFirst("Next-After-Id");
+		assertNotNull(nextAfterId);
+
+		ResponseEntity<String> secondPage = restTemplate.getForEntity(
+				"/api/getCustomerTransactionHistory/" + customerId + "?limit=1&afterId=" + nextAfterId, String.class);
+		assertEquals(HttpStatus.OK, secondPage.getStatusCode());
+		assertEquals("[\"FROM Branden Gibson 20 TO Georgina Hazel\"]", secondPage.getBody());
+		assertNull(secondPage.getHeaders().getFirst("Next-After-Id"));
+	}
+
+    // Exports Georgina's seeded transactions as NDJSON and as a narrowed CSV
+    @Test
+    void testExportTransactionHistory() {
+		Long customerId = Long.valueOf(4);
+
+		ResponseEntity<String> ndjson = restTemplate
+				.getForEntity("/api/exportCustomerTransactions/" + customerId, String.class);
+		assertEquals(HttpStatus.OK, ndjson.getStatusCode());
+		String[] lines = ndjson.getBody().split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].startsWith("{\"id\":1,\"sender_account_id\":5,\"receiver_account_id\":1,\"amount\":20.00,"));
+		assertTrue(lines[0].endsWith("\"transaction_details\":\"FROM Georgina Hazel 20 TO Arisha Barron\"}"));
+
+		ResponseEntity<String> csv = restTemplate
+				.getForEntity("/api/exportCustomerTransactions/" + customerId + "?format=csv&fromId=2", String.class);
+		assertEquals(HttpStatus.OK, csv.getStatusCode());
+		lines = csv.getBody().split("\n");
+		assertEquals(2, lines.length);
+		assertEquals("id,sender_account_id,receiver_account_id,amount,created_at,transaction_details", lines[0]);
+		assertTrue(lines[1].startsWith("2,3,5,20.00,"));
+		assertTrue(lines[1].endsWith(",\"FROM Branden Gibson 20 TO Georgina Hazel\""));
+
+		ResponseEntity<String> beforeAnything = restTemplate.getForEntity(
+				"/api/exportCustomerTransactions/" + customerId + "?to=1970-01-02T00:00:00Z", String.class);
+		assertEquals(HttpStatus.OK, beforeAnything.getStatusCode());
+		assertNull(beforeAnything.getBody());
+
+		// Arisha's two accounts are merged by id and a transfer between them is written once
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		for (TransactionRequest request : List.of(
+				new TransactionRequest(Long.valueOf(2), Long.valueOf(1), Long.valueOf(1), Long.valueOf(1), Money.of("5")),
+				new TransactionRequest(Long.valueOf(1), Long.valueOf(1), Long.valueOf(3), Long.valueOf(2), Money.of("5")))) {
+			assertEquals(HttpStatus.OK, restTemplate.exchange("/api/transfer", HttpMethod.PUT,
+					new HttpEntity<>(request, headers), String.class).getStatusCode());
+		}
+		lines = restTemplate.getForEntity("/api/exportCustomerTransactions/1?format=csv", String.class).getBody()
+				.split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[1].startsWith("1,5,1,"), lines[1]);
+		assertTrue(lines[2].matches("\\d+,2,1,5.00,.*"), lines[2]);
+		assertTrue(lines[3].matches("\\d+,1,3,5.00,.*"), lines[3]);
+		assertTrue(Long.parseLong(lines[2].split(",")[0]) < Long.parseLong(lines[3].split(",")[0]));
+
+		ResponseEntity<String> badFormat = restTemplate
+				.getForEntity("/api/exportCustomerTransactions/" + customerId + "?format=xml", String.class);
+		assertEquals(HttpStatus.BAD_REQUEST, badFormat.getStatusCode());
+		assertEquals("[\"Format must be ndjson or csv\"]", badFormat.getBody());
+	}
+
+    // Opens accounts from a JSON array and from CSV, reporting every row in order
+    @Test
+    void testOnboardAccountsInBulk() {
+		Long georgina = Long.valueOf(4);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		String json = "[{\"customer_id\":4,\"initialDeposit\":10},{\"customer_id\":999,\"initialDeposit\":1},"
+				+ "{\"customer_id\":4,\"initialDeposit\":-1}]";
+		ResponseEntity<String> response = restTemplate.postForEntity("/api/createBankAccounts",
+				new HttpEntity<>(json, headers), String.class);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		String[] lines = response.getBody().split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].matches("\\{\"row\":1,\"status\":\"CREATED\",\"account_id\":\\d+}"), lines[0]);
+		assertEquals("{\"row\":2,\"status\":\"BAD_CUSTOMER_ID\"}", lines[1]);
+		assertEquals("{\"row\":3,\"status\":\"BAD_INITIAL_DEPOSIT\"}", lines[2]);
+		assertEquals("[\"80.00\",\"10.00\"]", restTemplate
+				.getForEntity("/api/getCustomerBalances/" + georgina, String.class).getBody());
+
+		// the new account can send straight away
+		Long accountId = Long.valueOf(lines[0].replaceAll("\\D+", " ").trim().split(" ")[1]);
+		TransactionRequest request = new TransactionRequest(accountId, georgina, Long.valueOf(6), Long.valueOf(5),
+				Money.of("10"));
+		assertEquals(HttpStatus.OK, restTemplate.exchange("/api/transfer", HttpMethod.PUT,
+				new HttpEntity<>(request, headers), String.class).getStatusCode());
+
+		// a row without a customer, alone in its chunk
+		lines = restTemplate.postForEntity("/api/createBankAccounts",
+				new HttpEntity<>("[{\"initialDeposit\":10}]", headers), String.class).getBody().split("\n");
+		assertArrayEquals(new String[] { "{\"row\":1,\"status\":\"BAD_CUSTOMER_ID\"}" }, lines);
+
+		// a deposit the balance column cannot hold fails its chunk, without the database's message
+		lines = restTemplate.postForEntity("/api/createBankAccounts",
+				new HttpEntity<>("[{\"customer_id\":4,\"initialDeposit\":100000000}]", headers), String.class)
+				.getBody().split("\n");
+		assertArrayEquals(new String[] { "{\"row\":1,\"status\":\"FAILED\",\"message\":\""
+				+ AccountOnboardingService.CHUNK_FAILED + "\"}" }, lines);
+
+		// more rows than one chunk, with a header and a broken line
+		StringBuilder csv = new StringBuilder("customer_id,initialDeposit\n");
+		for (int i = 0; i < 2500; i++) {
+			csv.append(i % 5 + 1).append(",1.50\n");
+			if (i == 1200) {
+				csv.append("five,dollars\n");
+			}
+		}
+		long accounts = bankAccountRepository.count();
+		headers.setContentType(MediaType.parseMediaType("text/csv"));
+		lines = restTemplate.postForEntity("/api/createBankAccounts", new HttpEntity<>(csv.toString(), headers),
+				String.class).getBody().split("\n");
+		assertEquals(2501, lines.length);
+		assertTrue(lines[1201].startsWith("{\"row\":1202,\"status\":\"BAD_ROW\",\"message\":"), lines[1201]);
+		assertTrue(lines[2500].startsWith("{\"row\":2501,\"status\":\"CREATED\""), lines[2500]);
+		assertEquals(accounts + 2500, bankAccountRepository.count());
+
+		headers.setContentType(MediaType.APPLICATION_XML);
+		response = restTemplate.postForEntity("/api/createBankAccounts", new HttpEntity<>("<accounts/>", headers),
+				String.class);
+		assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE, response.getStatusCode());
+	}
+
+    // Balances served from memory follow transfers and new accounts as they commit
+    @Test
+    void testBalancesFollowTransfersAndNewAccounts() {
+		Long georgina = Long.valueOf(4);
+
+		assertEquals("[\"80.00\"]", restTemplate.getForEntity("/api/getCustomerBalances/" + georgina, String.class)
+				.getBody());
+
+		TransactionRequest request = new TransactionRequest(Long.valueOf(5), georgina, Long.valueOf(6),
+				Long.valueOf(5), Money.of("20.50"));
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		restTemplate.exchange("/api/transfer", HttpMethod.PUT, new HttpEntity<>(request, headers), String.class);
+
+		restTemplate.postForEntity("/api/createBankAccount",
+				new CreateAccountRequest(georgina, Money.of("10")), String.class);
+
+		assertEquals("[\"59.50\",\"10.00\"]", restTemplate
+				.getForEntity("/api/getCustomerBalances/" + georgina, String.class).getBody());
+		assertEquals("[\"9019.50\"]", restTemplate
+				.getForEntity("/api/getCustomerBalances/" + Long.valueOf(5), String.class).getBody());
+		assertEquals(List.of(Money.of("59.50"), Money.of("10.00")),
+				bankAccountRepository.getBalances(georgina));
+	}
+
+    // Transaction rows only hold the customers' ids, details are rendered from
+    // their current names whenever the history is read
+    @Test
+    void testTransactionDetailsRenderedFromCustomerNames() {
+		Transaction seeded = transactionRepository.findById(Long.valueOf(1)).get();
+		assertEquals(Long.valueOf(4), seeded.getSender_customer_id());
+		assertEquals(Long.valueOf(1), seeded.getReceiver_customer_id());
+
+		Customer georgina = customerRepository.findById(Long.valueOf(4)).get();
+		georgina.setName("Georgina Hazel-Parham");
+		customerRepository.save(georgina);
+
+		assertEquals("[\"FROM Georgina Hazel-Parham 20 TO Arisha Barron\"]",
+				restTemplate.getForEntity("/api/getCustomerTransactionDetails/1", String.class).getBody());
+		assertEquals("[\"FROM Georgina Hazel-Parham 20 TO Arisha Barron\"]",
+				restTemplate.getForEntity("/api/getCustomerTransactionHistory/1", String.class).getBody());
+
+		// a customer deleted since is rendered with a placeholder
+		Customer gone = customerRepository.save(new Customer(null, "Gone Soon"));
+		seeded.setSender_customer_id(gone.getId());
+		transactionRepository.save(seeded);
+		assertEquals("[\"FROM Gone Soon 20 TO Arisha Barron\"]",
+				restTemplate.getForEntity("/api/getCustomerTransactionDetails/1", String.class).getBody());
+		customerRepository.delete(gone);
+		assertEquals("[\"FROM Unknown customer 20 TO Arisha Barron\"]",
+				restTemplate.getForEntity("/api/getCustomerTransactionDetails/1", String.class).getBody());
+	}
+
+    // Balances and history carry the customer's version as ETag, which answers
+    // If-None-Match with 304 until a transfer or a new account touches the customer
+    @Test
+    void testETagsFollowTransfersAndNewAccounts() {
+		Long georgina = Long.valueOf(4);
+		String balances = "/api/getCustomerBalances/" + georgina;
+		String history = "/api/getCustomerTransactionDetails/" + georgina;
+
+		ResponseEntity<String> first = restTemplate.getForEntity(balances, String.class);
+		String eTag = first.getHeaders().getETag();
+		assertNotNull(eTag);
+		assertEquals(eTag, restTemplate.getForEntity(history, String.class).getHeaders().getETag());
+
+		ResponseEntity<String> unchanged = getIfNoneMatch(balances, eTag);
+		assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+		assertEquals(eTag, unchanged.getHeaders().getETag());
+		assertNull(unchanged.getBody());
+		assertEquals(HttpStatus.NOT_MODIFIED, getIfNoneMatch(history, "\"other\", W/" + eTag).getStatusCode());
+		assertEquals(HttpStatus.OK, getIfNoneMatch(balances, "\"other\"").getStatusCode());
+		ResponseEntity<String> any = getIfNoneMatch(history, "*");
+		assertEquals(HttpStatus.NOT_MODIFIED, any.getStatusCode());
+		assertEquals(eTag, any.getHeaders().getETag());
+
+		TransactionRequest request = new TransactionRequest(Long.valueOf(5), georgina, Long.valueOf(6),
+				Long.valueOf(5), Money.of("20"));
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		restTemplate.exchange("/api/transfer", HttpMethod.PUT, new HttpEntity<>(request, headers), String.class);
+
+		ResponseEntity<String> afterTransfer = getIfNoneMatch(balances, eTag);
+		assertEquals(HttpStatus.OK, afterTransfer.getStatusCode());
+		assertEquals("[\"60.00\"]", afterTransfer.getBody());
+		ResponseEntity<String> historyAfterTransfer = getIfNoneMatch(history, eTag);
+		assertEquals(HttpStatus.OK, historyAfterTransfer.getStatusCode());
+		assertTrue(historyAfterTransfer.getBody().contains("FROM Georgina Hazel 20 TO Judah Parham"));
+
+		String transferred = afterTransfer.getHeaders().getETag();
+		assertNotEquals(eTag, transferred);
+		assertEquals(HttpStatus.NOT_MODIFIED, getIfNoneMatch(balances, transferred).getStatusCode());
+
+		restTemplate.postForEntity("/api/createBankAccount", new CreateAccountRequest(georgina, Money.of("10")),
+				String.class);
+
+		ResponseEntity<String> afterCreate = getIfNoneMatch(balances, transferred);
+		assertEquals(HttpStatus.OK, afterCreate.getStatusCode());
+		assertEquals("[\"60.00\",\"10.00\"]", afterCreate.getBody());
+		assertNotEquals(transferred, afterCreate.getHeaders().getETag());
+
+		// Arisha Barron's history names Georgina Hazel, who is renamed
+		String arisha = "/api/getCustomerTransactionDetails/1";
+		String named = restTemplate.getForEntity(arisha, String.class).getHeaders().getETag();
+		assertEquals(HttpStatus.NOT_MODIFIED, getIfNoneMatch(arisha, named).getStatusCode());
+		Customer renamed = customerRepository.findById(georgina).get();
+		renamed.setName("Georgina Hazel-Parham");
+		customerRepository.save(renamed);
+		ResponseEntity<String> afterRename = getIfNoneMatch(arisha, named);
+		assertEquals(HttpStatus.OK, afterRename.getStatusCode());
+		assertTrue(afterRename.getBody().contains("FROM Georgina Hazel-Parham 20 TO Arisha Barron"));
+	}
+
+	private ResponseEntity<String> getIfNoneMatch(String url, String eTag) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+	}
+
 }
@@ -0,0 +1,158 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.demo.Bank.AccountShard;
+import com.demo.Bank.AccountShardRepository;
+import com.demo.Bank.BalanceReadModel;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.HotAccounts;
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRepository;
+import com.demo.Transaction.TransactionRequest;
+import com.demo.Transaction.TransferService;
+import com.demo.Transaction.TransferStatus;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = { "bank.hot-accounts.shards=4", "bank.hot-accounts.fold-interval-ms=3600000" })
+class HotAccountTests {
+
+	@Autowired
+	BankController bankController;
+
+	@Autowired
+	TransferService transferService;
+
+	@Autowired
+	HotAccounts hotAccounts;
+
+	@Autowired
+	BankAccountRepository bankAccountRepository;
+
+	@Autowired
+	AccountShardRepository accountShardRepository;
+
+	@Autowired
+	TransactionRepository transactionRepository;
+
+	@Autowired
+	BalanceReadModel balanceReadModel;
+
+	@Autowired
+	TransactionTemplate transactionTemplate;
+
+    // Credits to Judah's hot account land in its shards, the reported balance is still exact
+    @Test
+    void testCreditsToHotAccountGoToShards() {
+		Long judah = Long.valueOf(6);
+		assertTrue(hotAccounts.enable(judah));
+		assertEquals(4, accountShardRepository.findShardsByAccountId(judah).size());
+
+		for (int i = 0; i < 3; i++) {
+			// Georgina Hazel sends 20 to Judah Parham
+			assertEquals(HttpStatus.OK, transfer(5, 4, 6, 5, "20").getStatusCode());
+		}
+
+		assertEquals(Money.of("8999.00"), bankAccountRepository.findById(judah).get().getBalance());
+		assertEquals(Money.of("60.00"), shardTotal(judah));
+		assertEquals(List.of("9059.00"), bankController.getCustomerBalancesById(Long.valueOf(5), null).getBody());
+		assertEquals(List.of(Money.of("9059.00")), bankAccountRepository.getBalances(Long.valueOf(5)));
+
+		transactionTemplate.executeWithoutResult(status -> hotAccounts.fold(judah));
+
+		assertEquals(Money.of("9059.00"), bankAccountRepository.findById(judah).get().getBalance());
+		assertEquals(Money.ZERO, shardTotal(judah));
+		assertEquals(List.of(Money.of("9059.00")), bankAccountRepository.getBalances(Long.valueOf(5)));
+	}
+
+    // Georgina can spend money that only sits in her shards so far, and no more
+    @Test
+    void testDebitFromHotAccountSeesShards() {
+		Long georgina = Long.valueOf(5);
+		assertTrue(hotAccounts.enable(georgina));
+
+		// Judah Parham sends 20 to Georgina Hazel, who then holds 80 + 20
+		assertEquals(HttpStatus.OK, transfer(6, 5, 5, 4, "20").getStatusCode());
+		assertEquals(Money.of("80.00"), bankAccountRepository.findById(georgina).get().getBalance());
+
+		assertEquals(HttpStatus.OK, transfer(5, 4, 6, 5, "100").getStatusCode());
+		assertEquals(Money.ZERO, bankAccountRepository.findById(georgina).get().getBalance());
+		assertEquals(Money.ZERO, shardTotal(georgina));
+
+		ResponseEntity<List<String>> response = transfer(5, 4, 6, 5, "0.01");
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		assertEquals(List.of("Insufficient funds"), response.getBody());
+	}
+
+    // The batch path drains the shards into the locked balance before it checks funds
+    @Test
+    void testBatchDebitFromHotAccountSeesShards() {
+		Long georgina = Long.valueOf(5);
+		assertTrue(hotAccounts.enable(georgina));
+		assertEquals(HttpStatus.OK, transfer(6, 5, 5, 4, "20").getStatusCode());
+
+		List<TransferStatus> statuses = transferService.transferBatch(List.of(
+				new TransactionRequest(georgina, Long.valueOf(4), Long.valueOf(6), Long.valueOf(5), Money.of("100")),
+				new TransactionRequest(georgina, Long.valueOf(4), Long.valueOf(6), Long.valueOf(5), Money.of("1"))));
+
+		assertEquals(List.of(TransferStatus.COMPLETED, TransferStatus.INSUFFICIENT_FUNDS), statuses);
+		assertEquals(Money.ZERO, bankAccountRepository.findById(georgina).get().getBalance());
+		assertEquals(Money.ZERO, shardTotal(georgina));
+		assertEquals(List.of(Money.of("9079.00")), bankAccountRepository.getBalances(Long.valueOf(5)));
+	}
+
+    // Every account sends to two hot accounts from many threads while their shards are
+    // folded continuously, see ConcurrentTransfers for what must hold afterwards
+    @Test
+    void testConcurrentCreditsToHotAccountsConserveMoney() throws Exception {
+		long[][] hot = { { 4, 3 }, { 6, 5 } };
+		for (long[] account : hot) {
+			assertTrue(hotAccounts.enable(account[0]));
+		}
+
+		ConcurrentTransfers concurrentTransfers = new ConcurrentTransfers(bankController, bankAccountRepository,
+				transactionRepository, balanceReadModel);
+		// mostly credits to the hot accounts, sometimes spending from them
+		concurrentTransfers.run(2000, 16,
+				() -> ThreadLocalRandom.current().nextInt(4) == 0 ? ConcurrentTransfers.random(5000)
+						: ConcurrentTransfers.random(ConcurrentTransfers.ACCOUNTS, hot, 5000),
+				() -> {
+					for (long[] account : hot) {
+						transactionTemplate.executeWithoutResult(status -> hotAccounts.fold(account[0]));
+					}
+				});
+
+		concurrentTransfers.assertConserved(ConcurrentTransfers.INSUFFICIENT_FUNDS);
+	}
+
+	private ResponseEntity<List<String>> transfer(long senderAccount, long sendingCustomer, long receiverAccount,
+			long receivingCustomer, String amount) {
+		return bankController.transferBetweenAccountsAndRecordTransaction(new TransactionRequest(senderAccount,
+				sendingCustomer, receiverAccount, receivingCustomer, Money.of(amount)), null);
+	}
+
+	private Money shardTotal(Long accountId) {
+		Money total = Money.ZERO;
+		for (AccountShard shard : accountShardRepository.findAll()) {
+			if (shard.getAccountId().equals(accountId)) {
+				total = total.plus(shard.getBalance());
+			}
+		}
+		return total;
+	}
+
+}
@@ -0,0 +1,238 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.CreateAccountRequest;
+import com.demo.Bank.Money;
+import com.demo.Idempotency.IdempotencyStore;
+import com.demo.Idempotency.StoredResponseRepository;
+import com.demo.Transaction.TransactionRepository;
+import com.demo.Transaction.TransactionRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest
+class IdempotencyTests {
+
+	@Autowired
+	BankController bankController;
+
+	@Autowired
+	BankAccountRepository bankAccountRepository;
+
+	@Autowired
+	TransactionRepository transactionRepository;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	IdempotencyStore idempotencyStore;
+
+	@Autowired
+	StoredResponseRepository storedResponseRepository;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+    // A retried transfer or account creation gets the first response and runs once
+    @Test
+    void testRetriesAreAnsweredWithTheFirstResponse() {
+		long transactions = transactionRepository.count();
+		ResponseEntity<List<String>> first = transfer("retry-1", "100");
+		ResponseEntity<List<String>> retry = transfer("retry-1", "100");
+
+		assertEquals(HttpStatus.OK, retry.getStatusCode());
+		assertEquals(first.getBody(), retry.getBody());
+		assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+		assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+		assertEquals(Money.of("420.00"), bankAccountRepository.findById(Long.valueOf(1)).get().getBalance());
+		assertEquals(transactions + 1, transactionRepository.count());
+
+		// rejections are kept too, a retry does not run again once funds arrive
+		assertEquals(List.of("Insufficient funds"), transfer("retry-2", "1000").getBody());
+		transfer(null, "-1000");
+		assertEquals(List.of("Insufficient funds"), transfer("retry-2", "1000").getBody());
+
+		// keys are compared per endpoint
+		long accounts = bankAccountRepository.count();
+		CreateAccountRequest create = new CreateAccountRequest(Long.valueOf(2), Money.of("5"));
+		assertEquals(HttpStatus.OK, bankController.createNewBankAccountForCustomer(create, "retry-1").getStatusCode());
+		assertEquals(HttpStatus.OK, bankController.createNewBankAccountForCustomer(create, "retry-1").getStatusCode());
+		assertEquals(accounts + 1, bankAccountRepository.count());
+
+		// a key sent again with a different request is refused, and runs nothing
+		ResponseEntity<List<String>> reused = transfer("retry-1", "200");
+		assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+		assertEquals(List.of(IdempotencyStore.KEY_REUSED), reused.getBody());
+		assertEquals(Money.of("1420.00"), bankAccountRepository.findById(Long.valueOf(1)).get().getBalance());
+
+		// requests without a key always run
+		transfer(null, "10");
+		transfer(null, "10");
+		assertEquals(Money.of("1400.00"), bankAccountRepository.findById(Long.valueOf(1)).get().getBalance());
+		assertEquals(transactions + 4, transactionRepository.count());
+
+		idempotencyStore.awaitWritten();
+		assertEquals(List.of("createBankAccount:retry-1", "transfer:retry-1", "transfer:retry-2"),
+				jdbcTemplate.queryForList("SELECT idempotency_key FROM idempotency_keys ORDER BY idempotency_key",
+						String.class));
+	}
+
+    // Duplicates sent at the same time wait for the first one instead of racing it
+    @Test
+    void testConcurrentDuplicatesRunOnce() throws Exception {
+		int threads = 16;
+		long transactions = transactionRepository.count();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<ResponseEntity<List<String>>>> responses = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			responses.add(executor.submit(() -> {
+				start.await();
+				return transfer("concurrent", "1");
+			}));
+		}
+		start.countDown();
+		for (Future<ResponseEntity<List<String>>> response : responses) {
+			assertEquals(List.of("Transfer successful"), response.get().getBody());
+		}
+		executor.shutdown();
+
+		assertEquals(transactions + 1, transactionRepository.count());
+		assertEquals(Money.of("519.00"), bankAccountRepository.findById(Long.valueOf(1)).get().getBalance());
+	}
+
+    // Responses no longer held in memory are answered from the idempotency_keys
+    // table, which also tells a different request sent with the same key
+    @Test
+    void testStoredResponsesOutliveTheCache() {
+		assertEquals(HttpStatus.OK, transfer("before-restart", "100").getStatusCode());
+		idempotencyStore.awaitWritten();
+		long transactions = transactionRepository.count();
+
+		// as after a restart, nothing is cached
+		IdempotencyStore restarted = new IdempotencyStore(storedResponseRepository, objectMapper,
+				transactionManager, 100, Duration.ofMinutes(10), Duration.ofHours(24));
+
+		ResponseEntity<List<String>> response = restarted.execute("transfer", "before-restart", request("100"),
+				Long.valueOf(1), () -> fail("ran again"));
+		assertEquals(List.of("Transfer successful"), response.getBody());
+		assertEquals("true", response.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+
+		ResponseEntity<List<String>> reused = restarted.execute("transfer", "before-restart", request("200"),
+				Long.valueOf(1), () -> fail("ran a different request"));
+		assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+		assertEquals(List.of(IdempotencyStore.KEY_REUSED), reused.getBody());
+
+		assertEquals(transactions, transactionRepository.count());
+		assertEquals(Money.of("420.00"), bankAccountRepository.findById(Long.valueOf(1)).get().getBalance());
+
+		assertEquals(HttpStatus.BAD_REQUEST, transfer("k".repeat(IdempotencyStore.MAX_KEY_LENGTH + 1), "1")
+				.getStatusCode());
+	}
+
+    // Admission is only asked once no response is held in memory, and before the
+    // idempotency_keys table is read. What it turns away is not kept, and an
+    // admitted request answered from the table is done all the same.
+    @Test
+    void testAdmissionIsAskedBeforeStoredResponses() {
+		assertEquals(HttpStatus.OK, transfer("stored", "100").getStatusCode());
+		idempotencyStore.awaitWritten();
+
+		StoredResponseRepository stored = mock(StoredResponseRepository.class,
+				AdditionalAnswers.delegatesTo(storedResponseRepository));
+		IdempotencyStore restarted = new IdempotencyStore(stored, objectMapper, transactionManager, 100,
+				Duration.ofMinutes(10), Duration.ofHours(24));
+		AtomicBoolean open = new AtomicBoolean();
+		AtomicInteger admitted = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		IdempotencyStore.Admission admission = new IdempotencyStore.Admission() {
+			@Override
+			public ResponseEntity<List<String>> admit() {
+				if (!open.get()) {
+					return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(List.of("later"));
+				}
+				admitted.incrementAndGet();
+				return null;
+			}
+
+			@Override
+			public void done() {
+				done.incrementAndGet();
+			}
+		};
+
+		ResponseEntity<List<String>> refused = restarted.execute("transfer", "new", request("1"), Long.valueOf(1),
+				admission, () -> fail("ran while turned away"));
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, refused.getStatusCode());
+		verify(stored, never()).findStoredSince(any(), any());
+
+		open.set(true);
+		ResponseEntity<List<String>> ran = restarted.execute("transfer", "new", request("1"), Long.valueOf(1),
+				admission, () -> ResponseEntity.ok(List.of("ran")));
+		assertEquals(List.of("ran"), ran.getBody());
+		ResponseEntity<List<String>> replayed = restarted.execute("transfer", "stored", request("100"),
+				Long.valueOf(1), admission, () -> fail("ran again"));
+		assertEquals("true", replayed.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+		assertEquals(2, admitted.get());
+		assertEquals(2, done.get());
+
+		// both responses are in memory now, so neither asks again
+		open.set(false);
+		for (String key : List.of("new", "stored")) {
+			assertEquals("true", restarted.execute("transfer", key, request(key.equals("new") ? "1" : "100"),
+					Long.valueOf(1), admission, () -> fail("ran again")).getHeaders()
+					.getFirst(IdempotencyStore.REPLAYED_HEADER));
+		}
+		assertEquals(2, admitted.get());
+		verify(stored, times(2)).findStoredSince(any(), any());
+	}
+
+	private ResponseEntity<List<String>> transfer(String idempotencyKey, String amount) {
+		return bankController.transferBetweenAccountsAndRecordTransaction(request(amount), idempotencyKey);
+	}
+
+	// Customer 1 moves the amount from account 1 to account 2, or back if it is negative
+	private static TransactionRequest request(String amount) {
+		Money money = Money.of(amount);
+		return money.isNegative()
+				? new TransactionRequest(Long.valueOf(2), Long.valueOf(1), Long.valueOf(1), Long.valueOf(1),
+						money.negate())
+				: new TransactionRequest(Long.valueOf(1), Long.valueOf(1), Long.valueOf(2), Long.valueOf(1), money);
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+
+import com.demo.Bank.CreateAccountRequest;
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRequest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability
+class MetricsTests {
+
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+    // Transfer outcomes, stage timings, repository calls, endpoint timings,
+    // caches and the connection pool are all registered and exported
+    @Test
+    void testTransfersAreMetered() {
+		// Georgina Hazel sends 20 to Judah Parham, then more than she has
+		assertEquals(HttpStatus.OK, transfer(Money.of("20")).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, transfer(Money.of("1000000")).getStatusCode());
+
+		assertEquals(1, meterRegistry.get("bank.transfers").tag("status", "COMPLETED").counter().count());
+		assertEquals(1, meterRegistry.get("bank.transfers").tag("status", "INSUFFICIENT_FUNDS").counter().count());
+		assertEquals(0, meterRegistry.get("bank.transfers").tag("status", "BAD_OWNER_SENDER").counter().count());
+		assertEquals(2, meterRegistry.get("bank.transfer.stage").tag("stage", "validate").timer().count());
+		assertEquals(2, meterRegistry.get("bank.transfer.stage").tag("stage", "debit").timer().count());
+		assertEquals(1, meterRegistry.get("bank.transfer.stage").tag("stage", "record").timer().count());
+		assertEquals(1, meterRegistry.get("http.server.requests").tag("method", "PUT").tag("status", "400")
+				.tag("uri", "/api/transfer").timer().count());
+		assertTrue(meterRegistry.get("spring.data.repository.invocations").tag("method", "debit").timer()
+				.count() >= 2);
+		assertNotNull(meterRegistry.get("cache.gets").tag("cache", "customers").meter());
+		assertNotNull(meterRegistry.get("hikaricp.connections.pending").gauge());
+		assertNotNull(meterRegistry.get("tomcat.threads.busy").gauge());
+
+		ResponseEntity<String> scrape = restTemplate.getForEntity("/actuator/prometheus", String.class);
+		assertEquals(HttpStatus.OK, scrape.getStatusCode());
+	}
+
+    // Requests the controller turns away itself are counted by failure
+    @Test
+    void testControllerFailuresAreMetered() {
+		assertEquals(HttpStatus.BAD_REQUEST,
+				restTemplate.getForEntity("/api/getCustomerBalances/999", String.class).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST,
+				restTemplate.getForEntity("/api/getCustomerTransactionHistory/1?limit=0", String.class)
+						.getStatusCode());
+
+		// Judah Parham has an account but no transactions
+		assertEquals(HttpStatus.BAD_REQUEST,
+				restTemplate.getForEntity("/api/getCustomerTransactionDetails/5", String.class).getStatusCode());
+
+		CreateAccountRequest request = new CreateAccountRequest(Long.valueOf(1), Money.of("-1"));
+		assertEquals(HttpStatus.BAD_REQUEST,
+				restTemplate.postForEntity("/api/createBankAccount", request, String.class).getStatusCode());
+
+		assertEquals(1, failures("BAD_CUSTOMER_ID"));
+		assertEquals(1, failures("BAD_PAGE_LIMIT"));
+		assertEquals(1, failures("NO_TRANSACTIONS_FOUND"));
+		assertEquals(1, failures("BAD_INITIAL_DEPOSIT"));
+		assertEquals(0, failures("EXCEPTION"));
+	}
+
+	private double failures(String failure) {
+		return meterRegistry.get("bank.requests.failed").tag("failure", failure).counter().count();
+	}
+
+	private ResponseEntity<String> transfer(Money amount) {
+		TransactionRequest request = new TransactionRequest(Long.valueOf(5), Long.valueOf(4), Long.valueOf(6),
+				Long.valueOf(5), amount);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return restTemplate.exchange("/api/transfer", HttpMethod.PUT, new HttpEntity<>(request, headers),
+				String.class);
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+import com.demo.Bank.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class MoneyTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Amounts are exact cents, and anything finer than a cent is rejected
+    @Test
+    void testConversionIsExact() {
+		assertEquals(2050, Money.of("20.5").getCents());
+		assertEquals(Money.of("20.50"), Money.of(new BigDecimal("20.500")));
+		assertEquals(new BigDecimal("20.50"), Money.of("20.5").toBigDecimal());
+		assertThrows(ArithmeticException.class, () -> Money.of("0.001"));
+		assertThrows(ArithmeticException.class, () -> Money.of("1e20"));
+	}
+
+    // Arithmetic throws instead of wrapping around
+    @Test
+    void testArithmeticIsOverflowChecked() {
+		assertEquals(Money.of("0.01"), Money.of("20.50").minus(Money.of("20.49")));
+		assertEquals(Money.of("-1.25"), Money.of("1.25").negate());
+		assertTrue(Money.of("-0.01").isNegative());
+		assertTrue(Money.of("9.99").isLessThan(Money.of("10")));
+		assertThrows(ArithmeticException.class, () -> Money.ofCents(Long.MAX_VALUE).plus(Money.ofCents(1)));
+		assertThrows(ArithmeticException.class, () -> Money.ofCents(Long.MIN_VALUE).negate());
+	}
+
+    // Balances keep both decimal places, transaction details drop them for whole amounts
+    @Test
+    void testFormatting() {
+		assertEquals("520.00", Money.of("520").toString());
+		assertEquals("0.05", Money.of("0.05").toString());
+		assertEquals("-0.05", Money.of("-0.05").toString());
+		assertEquals("-3.10", Money.of("-3.1").toString());
+		assertEquals("20", Money.of("20").toDisplayString());
+		assertEquals("20.50", Money.of("20.5").toDisplayString());
+	}
+
+    // JSON carries the same decimal number a BigDecimal amount did
+    @Test
+    void testJsonWireFormat() throws Exception {
+		assertEquals("20.00", objectMapper.writeValueAsString(Money.of("20")));
+		assertEquals(Money.of("20.50"), objectMapper.readValue("20.5", Money.class));
+		assertEquals(Money.of("20"), objectMapper.readValue("20", Money.class));
+	}
+
+}
@@ -0,0 +1,160 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+
+import com.demo.Bank.BalanceReadModel;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.HotAccounts;
+import com.demo.Bank.Money;
+import com.demo.Transaction.PartitionedTransferExecutor;
+import com.demo.Transaction.PendingCredit;
+import com.demo.Transaction.PendingCreditRepository;
+import com.demo.Transaction.TransactionRepository;
+import com.demo.Transaction.TransactionRequest;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+//Every partition keeps a single balance between batches, so balances are dropped and loaded again all the time.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = { "bank.partitions.enabled=true", "bank.partitions.count=4",
+		"bank.partitions.max-balances=1" })
+class PartitionedTransferTests {
+
+	@Autowired
+	BankController bankController;
+
+	@Autowired
+	PartitionedTransferExecutor partitionedTransferExecutor;
+
+	@Autowired
+	BankAccountRepository bankAccountRepository;
+
+	@Autowired
+	TransactionRepository transactionRepository;
+
+	@Autowired
+	PendingCreditRepository pendingCreditRepository;
+
+	@Autowired
+	BalanceReadModel balanceReadModel;
+
+	@Autowired
+	HotAccounts hotAccounts;
+
+    // Accounts 5 and 6 sit in different partitions, 2 and 6 in the same one
+    @Test
+    void testTransfersWithinAndAcrossPartitions() {
+		// Georgina Hazel sends 20 to Judah Parham, handed from partition 1 to 2
+		assertEquals(HttpStatus.OK, transfer(5, 4, 6, 5, "20").getStatusCode());
+		// Arisha Barron sends 500 to Judah Parham within partition 2
+		assertEquals(HttpStatus.OK, transfer(2, 1, 6, 5, "500").getStatusCode());
+
+		assertEquals(Money.of("60.00"), bankAccountRepository.findById(Long.valueOf(5)).get().getBalance());
+		assertEquals(Money.of("9519.00"), bankAccountRepository.findById(Long.valueOf(6)).get().getBalance());
+		assertEquals(Money.of("5020.00"), bankAccountRepository.findById(Long.valueOf(2)).get().getBalance());
+		assertEquals(0, pendingCreditRepository.count());
+		assertEquals(List.of("9519.00"), bankController.getCustomerBalancesById(Long.valueOf(5), null).getBody());
+		assertEquals(List.of("FROM Georgina Hazel 20 TO Judah Parham", "FROM Arisha Barron 500 TO Judah Parham"),
+				bankController.returnTransferHistory(Long.valueOf(5), null).getBody());
+
+		ResponseEntity<List<String>> response = transfer(5, 4, 6, 5, "60.01");
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		assertEquals(List.of("Insufficient funds"), response.getBody());
+		assertEquals(List.of("Sending bank account does not belong to sending customer"),
+				transfer(6, 4, 5, 4, "1").getBody());
+	}
+
+    // Items of a batch see the balances the items before them left, across partitions
+    @Test
+    void testBatchItemsApplyInOrder() {
+		List<String> messages = bankController.transferBatchBetweenAccountsAndRecordTransactions(List.of(
+				new TransactionRequest(Long.valueOf(5), Long.valueOf(4), Long.valueOf(6), Long.valueOf(5),
+						Money.of("80")),
+				new TransactionRequest(Long.valueOf(5), Long.valueOf(4), Long.valueOf(6), Long.valueOf(5),
+						Money.of("1")),
+				new TransactionRequest(Long.valueOf(6), Long.valueOf(5), Long.valueOf(5), Long.valueOf(4),
+						Money.of("10")),
+				new TransactionRequest(Long.valueOf(5), Long.valueOf(4), Long.valueOf(6), Long.valueOf(5),
+						Money.of("10"))))
+				.getBody();
+
+		assertEquals(List.of("Transfer successful", "Insufficient funds", "Transfer successful",
+				"Transfer successful"), messages);
+		assertEquals(Money.ZERO, bankAccountRepository.findById(Long.valueOf(5)).get().getBalance());
+		assertEquals(Money.of("9079.00"), bankAccountRepository.findById(Long.valueOf(6)).get().getBalance());
+	}
+
+    // A credit handed over before a stop is applied when the partitions start again
+    @Test
+    void testPendingCreditsAppliedOnStart() {
+		partitionedTransferExecutor.stop();
+		pendingCreditRepository.save(new PendingCredit(Long.valueOf(3), Long.valueOf(6), Long.valueOf(5),
+				Money.of("20")));
+		partitionedTransferExecutor.start();
+
+		assertEquals(0, pendingCreditRepository.count());
+		assertEquals(Money.of("9019.00"), bankAccountRepository.findById(Long.valueOf(6)).get().getBalance());
+		assertEquals(HttpStatus.OK, transfer(6, 5, 5, 4, "9019").getStatusCode());
+		assertEquals(Money.ZERO, bankAccountRepository.findById(Long.valueOf(6)).get().getBalance());
+	}
+
+    // Every account sends to every other from many threads, one of them hot, see
+    // ConcurrentTransfers for what must hold afterwards. No credit is left pending.
+    @Test
+    void testConcurrentTransfersConserveMoney() throws Exception {
+		assertTrue(hotAccounts.enable(Long.valueOf(4)));
+
+		ConcurrentTransfers concurrentTransfers = new ConcurrentTransfers(bankController, bankAccountRepository,
+				transactionRepository, balanceReadModel);
+		concurrentTransfers.run(2000, 16, () -> ConcurrentTransfers.random(50000));
+
+		concurrentTransfers.assertConserved(ConcurrentTransfers.INSUFFICIENT_FUNDS);
+		assertEquals(0, pendingCreditRepository.count());
+	}
+
+    // A stop while transfers cross partitions answers every accepted transfer,
+    // and turns the rest away without a transaction. Credits a stop leaves pending
+    // are applied on the next start.
+    @Test
+    void testStopDuringTransfersAcrossPartitions() throws Exception {
+		ConcurrentTransfers concurrentTransfers = new ConcurrentTransfers(bankController, bankAccountRepository,
+				transactionRepository, balanceReadModel);
+		CountDownLatch sent = new CountDownLatch(200);
+		AtomicBoolean stopped = new AtomicBoolean();
+		concurrentTransfers.start(16, () -> !stopped.get(), () -> {
+			sent.countDown();
+			return ConcurrentTransfers.random(50000);
+		});
+
+		assertTrue(sent.await(30, TimeUnit.SECONDS));
+		partitionedTransferExecutor.stop();
+		stopped.set(true);
+		concurrentTransfers.await();
+		assertTrue(concurrentTransfers.completed() > 0);
+
+		partitionedTransferExecutor.start();
+		assertEquals(0, pendingCreditRepository.count());
+		concurrentTransfers.assertConserved(ConcurrentTransfers.INSUFFICIENT_FUNDS,
+				"Transfer partitions are not running");
+	}
+
+	private ResponseEntity<List<String>> transfer(long senderAccount, long sendingCustomer, long receiverAccount,
+			long receivingCustomer, String amount) {
+		return bankController.transferBetweenAccountsAndRecordTransaction(new TransactionRequest(senderAccount,
+				sendingCustomer, receiverAccount, receivingCustomer, Money.of(amount)), null);
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+
+import com.demo.Bank.BalanceReadModel;
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.Money;
+import com.demo.Transaction.TransactionRepository;
+import com.demo.Transaction.TransactionRequest;
+import com.demo.Transaction.TransferService;
+import com.demo.Transaction.TransferStatus;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class TransferConcurrencyTests {
+
+	@Autowired
+	BankController bankController;
+
+	@Autowired
+	TransferService transferService;
+
+	@Autowired
+	BankAccountRepository bankAccountRepository;
+
+	@Autowired
+	TransactionRepository transactionRepository;
+
+	@Autowired
+	BalanceReadModel balanceReadModel;
+
+    // 250 threads all draining Georgina's account (balance 80) one unit at a time.
+    // Exactly 80 transfers may succeed and the account must never go negative.
+    @Test
+    void testConcurrentTransfersFromSameAccountNeverOverdraw() throws Exception {
+		int threads = 250;
+		Long sendingBankAccountId = Long.valueOf(5);
+		Long receivingBankAccountId = Long.valueOf(6);
+		Money amount = Money.of("1");
+
+		Money startingSender = bankAccountRepository.findById(sendingBankAccountId).get().getBalance();
+		Money startingReceiver = bankAccountRepository.findById(receivingBankAccountId).get().getBalance();
+		long startingTransactions = transactionRepository.count();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<TransferStatus>> results = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(() -> {
+				start.await();
+				return transferService.transfer(new TransactionRequest(sendingBankAccountId, Long.valueOf(4),
+						receivingBankAccountId, Long.valueOf(5), amount));
+			}));
+		}
+		start.countDown();
+
+		int completed = 0;
+		for (Future<TransferStatus> result : results) {
+			if (result.get() == TransferStatus.COMPLETED) {
+				completed++;
+			}
+		}
+		executor.shutdown();
+
+		assertEquals(80, completed);
+		assertEquals(Money.ZERO, bankAccountRepository.findById(sendingBankAccountId).get().getBalance());
+		assertEquals(0, startingReceiver.plus(startingSender)
+				.compareTo(bankAccountRepository.findById(receivingBankAccountId).get().getBalance()));
+		assertEquals(startingTransactions + 80, transactionRepository.count());
+	}
+
+    /*
+     * Random transfers in both directions between every seeded account, from many
+     * threads at once, through the controller and its account locks, while
+     * customers keep being loaded into the balance read model. See
+     * ConcurrentTransfers for what must hold afterwards.
+     * The default size keeps the build fast. For the full soak run with
+     * -Dtransfer.contention.count=2000000
+     */
+    @Test
+    void testRandomConcurrentTransfersConserveMoney() throws Exception {
+		int transfers = Integer.getInteger("transfer.contention.count", 5000);
+		int threads = Integer.getInteger("transfer.contention.threads", 32);
+
+		ConcurrentTransfers concurrentTransfers = new ConcurrentTransfers(bankController, bankAccountRepository,
+				transactionRepository, balanceReadModel);
+		concurrentTransfers.run(transfers, threads, () -> ConcurrentTransfers.random(50000),
+				() -> balanceReadModel.get(ThreadLocalRandom.current().nextLong(1, 6)));
+
+		concurrentTransfers.assertConserved(ConcurrentTransfers.INSUFFICIENT_FUNDS);
+	}
+
+}
@@ -0,0 +1,143 @@
+package com.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+
+import com.demo.Bank.BankAccountRepository;
+import com.demo.Bank.Money;
+import com.demo.Transaction.JournalProjector;
+import com.demo.Transaction.TransactionRepository;
+import com.demo.Transaction.TransactionRequest;
+import com.demo.Transaction.TransferJournal;
+
+//schema.sql adds what Hibernate does not create, data.sql contains pre-loaded transactions, accounts, and customers.
+@Sql(scripts = { "classpath:/schema.sql", "classpath:/data.sql" }, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"bank.journal.enabled=true", "bank.journal.dir=target/journal-tests/${random.uuid}",
+		"bank.journal.segment-records=2" })
+class TransferJournalTests {
+
+	@Autowired
+	TestRestTemplate restTemplate;
+
+	@Autowired
+	TransactionRepository transactionRepository;
+
+	@Autowired
+	BankAccountRepository bankAccountRepository;
+
+	@Autowired
+	JournalProjector journalProjector;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	TransferJournal transferJournal;
+
+    // A journaled transfer is on disk and shows up in the history straight away
+    @Test
+    void testTransferIsJournaledAndProjected() throws Exception {
+		// Georgina Hazel sends 20 to Judah Parham
+		assertEquals(HttpStatus.OK, transfer(Money.of("20")).getStatusCode());
+
+		try (Stream<Path> files = Files.list(transferJournal.getDir())) {
+			List<Path> segments = files.toList();
+			assertEquals(1, segments.size());
+			assertTrue(Files.size(segments.get(0)) > 0);
+		}
+
+		ResponseEntity<String> historyResponse = restTemplate
+				.getForEntity("/api/getCustomerTransactionDetails/5", String.class);
+		assertEquals(HttpStatus.OK, historyResponse.getStatusCode());
+		assertEquals("[\"FROM Georgina Hazel 20 TO Judah Parham\"]", historyResponse.getBody());
+
+		assertEquals(Long.valueOf(1), transactionRepository.findMaxJournalSequence());
+		assertEquals(Long.valueOf(1), bankAccountRepository.findJournalSequence(Long.valueOf(5)));
+		assertEquals(Money.of("60.00"), bankAccountRepository.findById(Long.valueOf(5)).get().getBalance());
+	}
+
+    // A transfer rejected for insufficient funds leaves a gap the projector skips
+    @Test
+    void testRejectedTransferIsSkipped() {
+		assertEquals(HttpStatus.BAD_REQUEST, transfer(Money.of("1000000")).getStatusCode());
+		assertEquals(HttpStatus.OK, transfer(Money.of("20")).getStatusCode());
+
+		journalProjector.awaitProjected();
+		assertEquals(Long.valueOf(2), transactionRepository.findMaxJournalSequence());
+		assertEquals(4, transactionRepository.count());
+	}
+
+    // Rows lost before they were projected are rebuilt from the journal on start
+    @Test
+    void testProjectorRecoversCommittedTransfers() {
+		assertEquals(HttpStatus.OK, transfer(Money.of("20")).getStatusCode());
+		assertEquals(HttpStatus.OK, transfer(Money.of("30")).getStatusCode());
+
+		journalProjector.stop();
+		jdbcTemplate.update("DELETE FROM transactions WHERE journal_sequence IS NOT NULL");
+		journalProjector.start();
+
+		ResponseEntity<String> historyResponse = restTemplate
+				.getForEntity("/api/getCustomerTransactionDetails/5", String.class);
+		assertEquals("[\"FROM Georgina Hazel 20 TO Judah Parham\",\"FROM Georgina Hazel 30 TO Judah Parham\"]",
+				historyResponse.getBody());
+		assertEquals(Long.valueOf(2), transactionRepository.findMaxJournalSequence());
+	}
+
+    // Segments before the one holding the projected checkpoint are deleted, and
+    // a restart still continues after the last sequence
+    @Test
+    void testProjectedSegmentsAreReleased() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			assertEquals(HttpStatus.OK, transfer(Money.of("1")).getStatusCode());
+		}
+		journalProjector.awaitProjected();
+
+		// sequences 1 to 5 span three segments, only the one holding 5 is left
+		try (Stream<Path> files = Files.list(transferJournal.getDir())) {
+			assertEquals(List.of("journal-000000000002.dat"),
+					files.map(file -> file.getFileName().toString()).toList());
+		}
+
+		journalProjector.stop();
+		transferJournal.stop();
+		transferJournal.start();
+		journalProjector.start();
+
+		assertEquals(HttpStatus.OK, transfer(Money.of("1")).getStatusCode());
+		journalProjector.awaitProjected();
+		assertEquals(Long.valueOf(6), transactionRepository.findMaxJournalSequence());
+		assertEquals(9, transactionRepository.count());
+	}
+
+	private ResponseEntity<String> transfer(Money amount) {
+		TransactionRequest request = new TransactionRequest(Long.valueOf(5), Long.valueOf(4), Long.valueOf(6),
+				Long.valueOf(5), amount);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return restTemplate.exchange("/api/transfer", HttpMethod.PUT, new HttpEntity<>(request, headers),
+				String.class);
+	}
+
+}